@@ -0,0 +1,91 @@
+package com.miko.admission;
+
+import com.miko.config.AiAdmissionConfig;
+import com.miko.config.VolcArkConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * AI服务降级阶梯
+ * <p>
+ * 由调度器根据等待并发许可的任务数与并发上限之比更新当前等级，压力越大，单次请求越便宜：
+ * 先关闭深度思考，再切换到快速模型，最后不再调用AI而是直接回复繁忙。
+ * 豆包服务在对话前通过 {@link #resolveThinking} 和 {@link #resolveModel} 取得本轮实际使用的参数。
+ * </p>
+ */
+@Slf4j
+@Component
+public class DegradationLadder {
+
+    private final AiAdmissionConfig config;
+    private final VolcArkConfig volcArkConfig;
+    private final AtomicReference<DegradationLevel> level = new AtomicReference<>(DegradationLevel.NORMAL);
+
+    public DegradationLadder(AiAdmissionConfig config, VolcArkConfig volcArkConfig, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.volcArkConfig = volcArkConfig;
+        Gauge.builder("ai.admission.degradation.level", level, ref -> ref.get().ordinal())
+                .description("当前AI降级等级：0正常 1关闭深度思考 2快速模型 3繁忙")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 根据等待情况更新降级等级
+     *
+     * @param queued   等待并发许可的任务数
+     * @param capacity 并发上限
+     * @return 更新后的等级
+     */
+    public DegradationLevel update(int queued, int capacity) {
+        double ratio = capacity <= 0 ? 1.0 : (double) queued / capacity;
+        DegradationLevel next;
+        if (ratio >= config.getBusyRatio()) {
+            next = DegradationLevel.BUSY;
+        } else if (ratio >= config.getFastModelRatio()) {
+            next = DegradationLevel.FAST_MODEL;
+        } else if (ratio >= config.getNoThinkingRatio()) {
+            next = DegradationLevel.NO_THINKING;
+        } else {
+            next = DegradationLevel.NORMAL;
+        }
+        DegradationLevel previous = level.getAndSet(next);
+        if (previous != next) {
+            log.warn("AI降级等级变化：{} -> {}（等待 {}/{}）", previous.getDescription(), next.getDescription(), queued, capacity);
+        }
+        return next;
+    }
+
+    public DegradationLevel current() {
+        return level.get();
+    }
+
+    /**
+     * 本轮是否开启深度思考
+     */
+    public boolean resolveThinking(boolean configured) {
+        return configured && !current().atLeast(DegradationLevel.NO_THINKING);
+    }
+
+    /**
+     * 本轮实际使用的模型，降级到快速模型时替换为 fast-model
+     * <p>上下文链（previousResponseId）不能跨模型延续，只能用于开启新链或无状态的请求</p>
+     */
+    public String resolveModel(String model) {
+        if (!current().atLeast(DegradationLevel.FAST_MODEL)) {
+            return model;
+        }
+        String fastModel = config.getFastModel();
+        if (fastModel == null || !volcArkConfig.getModels().contains(fastModel)) {
+            return model;
+        }
+        return fastModel;
+    }
+
+    public String getBusyReply() {
+        return config.getBusyReply();
+    }
+}
@@ -0,0 +1,40 @@
+package com.miko.admission;
+
+import lombok.Getter;
+
+/**
+ * AI服务降级等级，等级越高，单次请求越便宜
+ */
+@Getter
+public enum DegradationLevel {
+
+    /**
+     * 正常服务
+     */
+    NORMAL("正常"),
+
+    /**
+     * 关闭深度思考
+     */
+    NO_THINKING("关闭深度思考"),
+
+    /**
+     * 关闭深度思考并切换到快速模型
+     */
+    FAST_MODEL("切换快速模型"),
+
+    /**
+     * 不再调用AI，直接回复繁忙
+     */
+    BUSY("繁忙");
+
+    private final String description;
+
+    DegradationLevel(String description) {
+        this.description = description;
+    }
+
+    public boolean atLeast(DegradationLevel level) {
+        return ordinal() >= level.ordinal();
+    }
+}
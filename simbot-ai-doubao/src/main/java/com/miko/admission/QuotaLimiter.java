@@ -0,0 +1,180 @@
+package com.miko.admission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miko.config.AiQuotaConfig;
+import com.miko.entity.BotChatContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI调用配额
+ * <p>
+ * 每轮对话依次占用 用户 → 群（仅群聊）→ 全局 三个令牌桶，任一不足则本轮不调用AI，已占用的令牌退回。
+ * 令牌桶按 GCRA 实现：每个桶只有一个“理论到达时间”，占用令牌就是一次 CAS，无锁、无定时补充任务。
+ * 用户配额按亲密等级取 user-levels 中的对应项；长时间不活跃的用户/群的桶会被回收。
+ * 被拒绝的次数以 ai.quota.rejected{scope} 暴露。
+ * 本轮最终没有调用AI时（如命中群聊回复缓存）由调用方通过 {@link #refund} 退回。
+ * 超出配额的提示每个用户在 notice-interval 内只回复一次，避免刷屏的人每条消息都换来一条机器人回复。
+ * </p>
+ */
+@Slf4j
+@Component
+public class QuotaLimiter {
+
+    private static final Duration IDLE_EXPIRY = Duration.ofMinutes(30);
+    private static final AiQuotaConfig.Bucket UNLIMITED = new AiQuotaConfig.Bucket(0, 0);
+
+    private final AiQuotaConfig config;
+    private final Bucket global = new Bucket();
+    private final Cache<String, Bucket> groups = Caffeine.newBuilder().expireAfterAccess(IDLE_EXPIRY).build();
+    private final Cache<String, Bucket> users = Caffeine.newBuilder().expireAfterAccess(IDLE_EXPIRY).build();
+    /**
+     * 近期已收到超出配额提示的用户
+     */
+    private final Cache<String, Boolean> notified;
+
+    private final Counter userRejected;
+    private final Counter groupRejected;
+    private final Counter globalRejected;
+
+    public QuotaLimiter(AiQuotaConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.notified = Caffeine.newBuilder().expireAfterWrite(config.getNoticeInterval()).build();
+        this.userRejected = rejectedCounter(meterRegistry, "user");
+        this.groupRejected = rejectedCounter(meterRegistry, "group");
+        this.globalRejected = rejectedCounter(meterRegistry, "global");
+    }
+
+    /**
+     * 为一轮对话占用配额
+     *
+     * @param chatType      对话类型
+     * @param chatId        群号或好友QQ号
+     * @param userId        发言人QQ号
+     * @param intimacyLevel 发言人的亲密等级，非好友为0
+     * @return 配额充足返回true
+     */
+    public boolean tryAcquire(BotChatContext.ChatType chatType, String chatId, String userId, int intimacyLevel) {
+        if (!config.isEnabled()) {
+            return true;
+        }
+        long now = System.nanoTime();
+        AiQuotaConfig.Bucket userQuota = userQuota(intimacyLevel);
+        Bucket user = users.get(userId, _ -> new Bucket());
+        if (!user.tryAcquire(now, userQuota)) {
+            userRejected.increment();
+            log.debug("用户[{}]超出调用配额（亲密等级{}）", userId, intimacyLevel);
+            return false;
+        }
+        Bucket group = null;
+        if (chatType == BotChatContext.ChatType.GROUP) {
+            group = groups.get(chatId, _ -> new Bucket());
+            if (!group.tryAcquire(now, config.getGroup())) {
+                user.refund(userQuota);
+                groupRejected.increment();
+                log.debug("群[{}]超出调用配额", chatId);
+                return false;
+            }
+        }
+        if (!global.tryAcquire(now, config.getGlobal())) {
+            user.refund(userQuota);
+            if (group != null) {
+                group.refund(config.getGroup());
+            }
+            globalRejected.increment();
+            log.debug("超出全局调用配额");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 退回一轮已占用的配额，用于本轮最终没有调用AI的情况（如命中群聊回复缓存）
+     * <p>参数须与占用时一致；桶已被回收时无需退回</p>
+     */
+    public void refund(BotChatContext.ChatType chatType, String chatId, String userId, int intimacyLevel) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Bucket user = users.getIfPresent(userId);
+        if (user != null) {
+            user.refund(userQuota(intimacyLevel));
+        }
+        if (chatType == BotChatContext.ChatType.GROUP) {
+            Bucket group = groups.getIfPresent(chatId);
+            if (group != null) {
+                group.refund(config.getGroup());
+            }
+        }
+        global.refund(config.getGlobal());
+    }
+
+    public String getOverQuotaReply() {
+        return config.getOverQuotaReply();
+    }
+
+    /**
+     * 被拒绝后是否应回复超出配额的提示：同一用户在 notice-interval 内只返回一次true
+     */
+    public boolean shouldNotify(String userId) {
+        return notified.asMap().putIfAbsent(userId, Boolean.TRUE) == null;
+    }
+
+    private AiQuotaConfig.Bucket userQuota(int intimacyLevel) {
+        List<AiQuotaConfig.Bucket> levels = config.getUserLevels();
+        if (levels == null || levels.isEmpty()) {
+            return UNLIMITED;
+        }
+        return levels.get(Math.clamp(intimacyLevel, 0, levels.size() - 1));
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String scope) {
+        return Counter.builder("ai.quota.rejected")
+                .description("超出配额被拒绝的对话轮数")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    /**
+     * GCRA 令牌桶：tat 为下一个令牌的理论到达时间，tat 领先当前时间不超过 burst 个间隔即可占用
+     */
+    private static final class Bucket {
+        private final AtomicLong tat = new AtomicLong(System.nanoTime());
+
+        boolean tryAcquire(long now, AiQuotaConfig.Bucket quota) {
+            if (quota.getPerMinute() <= 0) {
+                return true;
+            }
+            long interval = interval(quota);
+            long tolerance = interval * Math.max(1, quota.getBurst());
+            while (true) {
+                long current = tat.get();
+                long next = (current - now > 0 ? current : now) + interval;
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        void refund(AiQuotaConfig.Bucket quota) {
+            if (quota.getPerMinute() > 0) {
+                tat.addAndGet(-interval(quota));
+            }
+        }
+
+        private static long interval(AiQuotaConfig.Bucket quota) {
+            return (long) (TimeUnit.MINUTES.toNanos(1) / quota.getPerMinute());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.miko.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miko.config.AiReplyCacheConfig;
+import com.miko.entity.BotChatContext;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 群聊回复缓存
+ * <p>
+ * 大群里反复出现的短问题（“你是谁”、常见梗）按 规范化文本 + 人格前缀 + 模型 精确匹配，命中时直接复用上次的回复，不再请求方舟。
+ * 只缓存不依赖上下文的轮次：群聊、单条消息、不含引用和图片、不超过 max-prompt-chars 字、不含时间相关的词。
+ * 基于 Caffeine（W-TinyLFU 淘汰，写入后 ttl 过期），命中率以 ai.reply.cache.hit.ratio 暴露，
+ * 请求/淘汰明细见 cache.gets / cache.evictions{cache=ai.reply}。
+ * </p>
+ */
+@Component
+public class GroupReplyCache {
+
+    private static final Pattern LEADING_AT = Pattern.compile("^(@\\S+\\s+)+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final AiReplyCacheConfig config;
+    private final Cache<Key, String> replies;
+
+    public GroupReplyCache(AiReplyCacheConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.replies = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, replies, "ai.reply");
+        Gauge.builder("ai.reply.cache.hit.ratio", replies, cache -> cache.stats().hitRate())
+                .description("群聊回复缓存命中率")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 本轮是否可以走缓存
+     *
+     * @param prompt        本轮用户消息
+     * @param chatType      对话类型
+     * @param personaPrefix 本轮的人格前缀（系统提示的稳定部分）
+     * @param model         本轮实际使用的模型
+     * @return 可缓存时返回缓存键，否则返回null
+     */
+    public Key keyOf(String prompt, BotChatContext.ChatType chatType, String personaPrefix, String model) {
+        if (!config.isEnabled() || chatType != BotChatContext.ChatType.GROUP
+                || prompt.indexOf('\n') >= 0 || prompt.contains("[引用") || prompt.contains("img[")) {
+            return null;
+        }
+        String normalized = normalize(prompt);
+        if (normalized.isEmpty() || normalized.length() > config.getMaxPromptChars()
+                || config.getBypassKeywords().stream().anyMatch(normalized::contains)) {
+            return null;
+        }
+        return new Key(normalized, personaPrefix, model);
+    }
+
+    /**
+     * @return 命中的回复，未命中返回null
+     */
+    public String get(Key key) {
+        return replies.getIfPresent(key);
+    }
+
+    public void put(Key key, String reply) {
+        replies.put(key, reply);
+    }
+
+    /**
+     * 规范化：全半角统一、去掉开头的@、忽略大小写、去掉空白和标点
+     */
+    static String normalize(String prompt) {
+        String text = Normalizer.normalize(prompt.strip(), Normalizer.Form.NFKC);
+        text = LEADING_AT.matcher(text).replaceFirst("");
+        return NON_WORD.matcher(text.toLowerCase(Locale.ROOT)).replaceAll("");
+    }
+
+    /**
+     * 缓存键，人格前缀按内容比较，前缀变化后旧回复自然失效
+     */
+    public record Key(String prompt, String personaPrefix, String model) {
+    }
+}
@@ -0,0 +1,40 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * AI请求准入与降级配置类
+ * 对应 application-doubao.yml 中的 ai.admission 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.admission")
+public class AiAdmissionConfig {
+
+    /**
+     * 等待并发许可的任务数与并发上限之比达到该值时关闭深度思考
+     */
+    private double noThinkingRatio = 0.25;
+
+    /**
+     * 等待并发许可的任务数与并发上限之比达到该值时切换到快速模型
+     */
+    private double fastModelRatio = 0.5;
+
+    /**
+     * 等待并发许可的任务数与并发上限之比达到该值时不再调用AI，直接回复繁忙
+     */
+    private double busyRatio = 1.0;
+
+    /**
+     * 降级时使用的快速模型，需在 volc.ark.models 中
+     */
+    private String fastModel = "doubao-seed-1-6-flash-250828";
+
+    /**
+     * 繁忙时的固定回复
+     */
+    private String busyReply = "现在找我聊天的人太多啦，等我缓一缓再回你～";
+}
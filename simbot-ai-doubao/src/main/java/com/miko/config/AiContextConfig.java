@@ -0,0 +1,38 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 对话上下文窗口配置类
+ * 对应 application-doubao.yml 中的 ai.context 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.context")
+public class AiContextConfig {
+
+    /**
+     * 历史消息的默认token预算（不含系统提示和本轮消息）
+     */
+    private int maxHistoryTokens = 6000;
+
+    /**
+     * 按模型覆盖的token预算: key = 模型名, value = 历史消息token预算
+     */
+    private Map<String, Integer> modelBudgets = new HashMap<>();
+
+    /**
+     * 无论预算如何都保留的最近消息条数
+     */
+    private int keepRecentMessages = 6;
+
+    /**
+     * 超出预算时裁剪到预算的比例，留出余量，避免每轮都裁剪一次
+     */
+    private double trimToRatio = 0.75;
+}
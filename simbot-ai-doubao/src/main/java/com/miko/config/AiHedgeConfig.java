@@ -0,0 +1,62 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 对冲请求配置类
+ * 对应 application-doubao.yml 中的 ai.hedge 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.hedge")
+public class AiHedgeConfig {
+
+    /**
+     * 是否开启对冲：主模型迟迟没有输出时，用快速模型再发一次同样的请求，取先完成的一个
+     */
+    private boolean enabled = false;
+
+    /**
+     * 对冲使用的快速模型，需在 volc.ark.models 中
+     */
+    private String model = "doubao-seed-1-6-flash-250828";
+
+    /**
+     * 触发对冲的主模型耗时分位数
+     */
+    private double percentile = 0.9;
+
+    /**
+     * 参与计算分位数的最近样本数
+     */
+    private int window = 200;
+
+    /**
+     * 样本不足时使用的等待时间
+     */
+    private Duration initialDelay = Duration.ofSeconds(8);
+
+    /**
+     * 等待时间下限
+     */
+    private Duration minDelay = Duration.ofSeconds(2);
+
+    /**
+     * 等待时间上限
+     */
+    private Duration maxDelay = Duration.ofSeconds(20);
+
+    /**
+     * 对冲额外调用占主调用的比例上限
+     */
+    private double maxExtraRatio = 0.1;
+
+    /**
+     * 对冲额度最多可累积的次数，应对短时间内集中变慢
+     */
+    private int maxBurst = 5;
+}
@@ -0,0 +1,63 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.time.LocalTime;
+
+/**
+ * AI后台任务配置类
+ * 对应 application-doubao.yml 中的 ai.job 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.job")
+public class AiJobConfig {
+
+    /**
+     * 是否执行后台任务（关闭时任务仍会入库，开启后补执行）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 低峰期开始时间，定时任务内容预生成等类型只在低峰期内执行
+     */
+    private LocalTime offPeakStart = LocalTime.of(2, 0);
+
+    /**
+     * 低峰期结束时间，早于开始时间表示跨零点
+     */
+    private LocalTime offPeakEnd = LocalTime.of(7, 0);
+
+    /**
+     * 同时执行的低峰期任务数
+     */
+    private int concurrency = 2;
+
+    /**
+     * 不受低峰期限制的任务（记忆摘要）同时执行的数量，与低峰期任务分开计算
+     */
+    private int immediateConcurrency = 1;
+
+    /**
+     * 每个任务最多执行次数，超过后标记为失败
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * 任务使用的模型，需在 volc.ark.models 中，建议使用便宜的快速模型
+     */
+    private String model = "doubao-seed-1-6-flash-250828";
+
+    /**
+     * 单个任务输入的最大字数，追加时超出部分从头部丢弃
+     */
+    private int maxPayloadChars = 20000;
+
+    /**
+     * 已结束（成功或失败）的任务保留时长，到期后删除；任务输入中含私聊记录，不长期留存
+     */
+    private Duration retention = Duration.ofDays(7);
+}
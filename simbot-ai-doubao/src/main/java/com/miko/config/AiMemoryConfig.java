@@ -0,0 +1,40 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 记忆摘要配置类
+ * 对应 application-doubao.yml 中的 ai.memory 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.memory")
+public class AiMemoryConfig {
+
+    /**
+     * 是否开启后台记忆摘要
+     */
+    private boolean enabled = true;
+
+    /**
+     * 生成摘要使用的模型，需在 volc.ark.models 中，建议使用便宜的快速模型
+     */
+    private String model = "doubao-seed-1-6-flash-250828";
+
+    /**
+     * 距上次摘要累计多少轮后触发
+     */
+    private int triggerTurns = 20;
+
+    /**
+     * 距上次摘要累计多少token后触发（按本地估算）
+     */
+    private int triggerTokens = 4000;
+
+    /**
+     * 摘要最大字数
+     */
+    private int maxSummaryChars = 300;
+}
@@ -0,0 +1,103 @@
+package com.miko.config;
+
+import com.miko.provider.ProviderType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多模型服务商配置类
+ * 对应 application-doubao.yml 中的 ai.provider 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.provider")
+public class AiProviderConfig {
+
+    /**
+     * 是否在多个服务商之间按延迟和错误率分配对话（流式的每一轮、非流式开启新链的轮次），关闭时只使用方舟
+     */
+    private boolean enabled = true;
+
+    /**
+     * 首字耗时和错误率的指数加权平均系数，越大越看重最近的调用
+     */
+    private double ewmaAlpha = 0.2;
+
+    /**
+     * 错误率惩罚系数：权重 = weight / (首字耗时 × (1 + error-penalty × 错误率))
+     */
+    private double errorPenalty = 4.0;
+
+    /**
+     * 随机探索比例，让冷门服务商也有少量流量，耗时统计不至于过期
+     */
+    private double explorationRatio = 0.05;
+
+    /**
+     * 还没有统计数据时假定的首字耗时
+     */
+    private Duration initialLatency = Duration.ofSeconds(2);
+
+    /**
+     * 建立连接的超时时间
+     */
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * OpenAI兼容服务商的读取超时：等待响应头、以及正文相邻两行之间的最长时间
+     */
+    private Duration readTimeout = Duration.ofSeconds(60);
+
+    /**
+     * 服务商列表，没有配置方舟时自动加入
+     */
+    private List<Provider> providers = new ArrayList<>();
+
+    @Data
+    public static class Provider {
+        /**
+         * 服务商名称，用于日志和指标
+         */
+        private String name;
+
+        /**
+         * 接口类型
+         */
+        private ProviderType type = ProviderType.OPENAI_COMPATIBLE;
+
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+
+        /**
+         * 接口地址（OpenAI兼容接口，到 /v1 为止）
+         */
+        private String baseUrl;
+
+        /**
+         * 接口密钥
+         */
+        private String apiKey;
+
+        /**
+         * 使用的模型；方舟按模型路由结果选择，无需配置
+         */
+        private String model;
+
+        /**
+         * 闲聊档使用的模型，为空时使用 model
+         */
+        private String fastModel;
+
+        /**
+         * 基础权重
+         */
+        private double weight = 1.0;
+    }
+}
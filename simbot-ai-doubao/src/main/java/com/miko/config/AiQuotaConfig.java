@@ -0,0 +1,66 @@
+package com.miko.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AI调用配额配置类
+ * 对应 application-doubao.yml 中的 ai.quota 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.quota")
+public class AiQuotaConfig {
+
+    /**
+     * 是否开启配额限制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 全局配额
+     */
+    private Bucket global = new Bucket(120, 30);
+
+    /**
+     * 每个群的配额
+     */
+    private Bucket group = new Bucket(10, 5);
+
+    /**
+     * 每个用户的配额，下标为亲密等级（0~5），等级超出列表时取最后一项
+     */
+    private List<Bucket> userLevels = new ArrayList<>(List.of(new Bucket(4, 3)));
+
+    /**
+     * 超出配额时的本地回复
+     */
+    private String overQuotaReply = "你说得太快啦，让我歇口气再聊～";
+
+    /**
+     * 同一用户在此时间内只收到一次超出配额的回复，其余被拒绝的消息直接忽略
+     */
+    private Duration noticeInterval = Duration.ofMinutes(1);
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket {
+        /**
+         * 每分钟补充的次数
+         */
+        private double perMinute;
+
+        /**
+         * 最多可连续使用的次数
+         */
+        private int burst;
+    }
+}
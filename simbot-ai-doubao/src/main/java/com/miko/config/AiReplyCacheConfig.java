@@ -0,0 +1,44 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 群聊回复缓存配置类
+ * 对应 application-doubao.yml 中的 ai.reply-cache 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.reply-cache")
+public class AiReplyCacheConfig {
+
+    /**
+     * 是否开启群聊回复缓存
+     */
+    private boolean enabled = false;
+
+    /**
+     * 最多缓存的回复条数，超出后按访问频率和新近程度淘汰
+     */
+    private long maxSize = 1000;
+
+    /**
+     * 回复写入后的有效期
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * 只缓存不超过该字数的短问题
+     */
+    private int maxPromptChars = 30;
+
+    /**
+     * 包含这些词的问题答案随时间变化，不走缓存
+     */
+    private List<String> bypassKeywords = new ArrayList<>();
+}
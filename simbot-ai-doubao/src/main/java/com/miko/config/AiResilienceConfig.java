@@ -0,0 +1,78 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 方舟调用容错配置类
+ * 对应 application-doubao.yml 中的 ai.resilience 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.resilience")
+public class AiResilienceConfig {
+
+    /**
+     * 熔断器配置（按模型独立）
+     */
+    private Breaker breaker = new Breaker();
+
+    /**
+     * 重试配置
+     */
+    private Retry retry = new Retry();
+
+    /**
+     * 熔断期间直接回复的本地兜底文案
+     */
+    private String fallbackReply = "我这会儿有点累了，晚点再陪你聊～";
+
+    @Data
+    public static class Breaker {
+        /**
+         * 统计最近多少次调用
+         */
+        private int window = 20;
+
+        /**
+         * 窗口内至少多少次调用才判断是否熔断
+         */
+        private int minCalls = 10;
+
+        /**
+         * 失败率达到该比例时熔断
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * 熔断持续时间，之后放行一次试探调用
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Retry {
+        /**
+         * 单次调用最多重试次数
+         */
+        private int maxRetries = 2;
+
+        /**
+         * 首次重试的基础等待时间，之后指数增长并加入随机抖动
+         */
+        private Duration backoff = Duration.ofMillis(300);
+
+        /**
+         * 重试额度：每次调用积累的重试次数，长期来看重试不超过调用数的该比例
+         */
+        private double budgetRatio = 0.2;
+
+        /**
+         * 重试额度最多可累积的次数
+         */
+        private int maxBurst = 10;
+    }
+}
@@ -0,0 +1,50 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 模型路由配置类
+ * 对应 application-doubao.yml 中的 ai.routing 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.routing")
+public class AiRoutingConfig {
+
+    /**
+     * 是否按消息复杂度选择模型，关闭时所有消息使用 volc.ark.model
+     */
+    private boolean enabled = true;
+
+    /**
+     * 闲聊档模型，需在 volc.ark.models 中
+     */
+    private String fastModel = "doubao-seed-1-6-flash-250828";
+
+    /**
+     * 常规档模型，为空时使用 volc.ark.model
+     */
+    private String standardModel;
+
+    /**
+     * 难题档模型（深度思考），需在 volc.ark.models 中
+     */
+    private String thinkingModel = "doubao-seed-1-6-thinking-250715";
+
+    /**
+     * 不超过该字数且不是提问的消息视为闲聊
+     */
+    private int casualMaxChars = 30;
+
+    /**
+     * 超过该字数的提问视为难题
+     */
+    private int hardMinChars = 80;
+
+    /**
+     * 超过该字数的消息一律视为难题
+     */
+    private int longMinChars = 300;
+}
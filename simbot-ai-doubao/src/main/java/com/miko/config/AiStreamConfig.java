@@ -0,0 +1,38 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 流式回复配置类
+ * 对应 application-doubao.yml 中的 ai.stream 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.stream")
+public class AiStreamConfig {
+
+    /**
+     * 是否开启流式回复：模型边生成边按句发送，而不是等整段回复生成完
+     * <p>流式走 Chat 接口，每轮重发完整历史，不使用 Responses 接口的 previousResponseId 上下文链</p>
+     */
+    private boolean enabled = false;
+
+    /**
+     * 单条消息的最少字符数，不足时与下一句合并发送
+     */
+    private int minChunkChars = 8;
+
+    /**
+     * 单条消息的最多字符数，一直没有句子边界时在此处强制切分
+     */
+    private int maxChunkChars = 200;
+
+    /**
+     * 相邻两条消息的最小发送间隔
+     */
+    private Duration interval = Duration.ofMillis(800);
+}
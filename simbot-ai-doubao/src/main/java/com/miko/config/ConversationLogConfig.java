@@ -0,0 +1,30 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话日志配置类
+ * 对应 application-doubao.yml 中的 ai.conversation-log 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.conversation-log")
+public class ConversationLogConfig {
+
+    /**
+     * 是否记录对话日志
+     */
+    private boolean enabled = true;
+
+    /**
+     * 采样比例（0~1），按会话采样：被选中的会话记录每一轮，未选中的会话完全不记录
+     */
+    private double sampleRate = 0.1;
+
+    /**
+     * 单条日志内容的最大字符数，超出部分截断
+     */
+    private int maxPayloadChars = 2000;
+}
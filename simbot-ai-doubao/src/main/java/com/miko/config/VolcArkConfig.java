@@ -3,12 +3,17 @@ package com.miko.config;
 import com.volcengine.ark.runtime.service.ArkService;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 火山方舟 ArkService 配置类
@@ -26,6 +31,14 @@ public class VolcArkConfig {
     private String model;
     private List<String> models;
     private boolean isDeepThinking;
+    /**
+     * 异步调用的超时时间，超时后中止请求
+     */
+    private Duration timeout = Duration.ofSeconds(60);
+    /**
+     * 底层HTTP客户端的连接池、并发和预热
+     */
+    private Http http = new Http();
 
     @Bean(name = "arkService")
     public ArkService arkService() {
@@ -34,8 +47,13 @@ public class VolcArkConfig {
             arkService = ArkService.builder()
                     .apiKey(apiKey)
                     .baseUrl(baseUrl)
+                    .connectTimeout(http.getConnectTimeout())
+                    .timeout(http.getReadTimeout())
+                    .connectionPool(arkConnectionPool())
+                    .dispatcher(arkDispatcher())
                     .build();
-            log.info("ArkService 初始化成功");
+            log.info("ArkService 初始化成功，连接池：最多{}个空闲连接、保活{}，单主机并发上限{}",
+                    http.getMaxIdleConnections(), http.getKeepAlive(), http.getMaxRequestsPerHost());
             return arkService;
         } catch (Exception e) {
             log.error("ArkService 初始化失败", e);
@@ -43,6 +61,27 @@ public class VolcArkConfig {
         }
     }
 
+    /**
+     * ArkService 的连接池，单独声明以便预热组件观察空闲连接数
+     */
+    @Bean
+    public ConnectionPool arkConnectionPool() {
+        return new ConnectionPool(http.getMaxIdleConnections(), http.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * ArkService 的请求调度器，单独声明以便预热组件观察是否有请求在进行；
+     * 异步请求在虚拟线程上执行，默认的单主机并发上限（5）对只连方舟一个主机的场景过低
+     */
+    @Bean
+    public Dispatcher arkDispatcher() {
+        Dispatcher dispatcher = new Dispatcher(Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("ark-http-", 0).factory()));
+        dispatcher.setMaxRequests(http.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(http.getMaxRequestsPerHost());
+        return dispatcher;
+    }
+
     @PreDestroy
     public void destroyArkService() {
         if (arkService != null) {
@@ -50,4 +89,48 @@ public class VolcArkConfig {
             log.info("ArkService 已优雅关闭，Executor 资源释放完成");
         }
     }
-}
\ No newline at end of file
+
+    @Data
+    public static class Http {
+        /**
+         * 连接池保留的最大空闲连接数
+         */
+        private int maxIdleConnections = 16;
+        /**
+         * 空闲连接的保活时间
+         */
+        private Duration keepAlive = Duration.ofMinutes(5);
+        /**
+         * 同时进行的请求上限
+         */
+        private int maxRequests = 128;
+        /**
+         * 对同一主机同时进行的请求上限
+         */
+        private int maxRequestsPerHost = 64;
+        /**
+         * 建立连接（含TLS握手）的超时时间
+         */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        /**
+         * 读超时，流式输出时为两个分片之间的最长间隔
+         */
+        private Duration readTimeout = Duration.ofMinutes(3);
+        /**
+         * 启动后并发发起的预热请求数（HTTP/2 下会共用一个连接），0 表示不预热
+         */
+        private int warmupConnections = 4;
+        /**
+         * 是否在空闲时保温连接
+         */
+        private boolean keepWarm = true;
+        /**
+         * 保温间隔：没有请求在进行时，每隔该时间轻量请求一次方舟，避免连接因空闲被服务端关闭
+         */
+        private Duration keepWarmInterval = Duration.ofSeconds(45);
+        /**
+         * 保温窗口：只在最近一次实际请求之后的这段时间内保温，长时间无人使用（如夜间）时不再发请求
+         */
+        private Duration keepWarmWindow = Duration.ofMinutes(30);
+    }
+}
@@ -0,0 +1,145 @@
+package com.miko.context;
+
+import com.miko.config.AiContextConfig;
+import com.miko.entity.BotChatContext;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessageRole;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 对话上下文窗口
+ * <p>
+ * 按模型的token预算裁剪 {@link BotChatContext#getMessages()}：系统提示每轮单独拼接、不在历史中，
+ * 历史超出预算时从最早的消息开始丢弃，直到降到预算的 trim-to-ratio，最近 keep-recent-messages 条始终保留。
+ * 一次裁到低水位，之后若干轮都不用再裁，历史前缀保持稳定，方舟上下文缓存可以继续命中。
+ * </p>
+ * <p>
+ * token数用本地估算（中日韩字符约1个token，其它字符约4个一个token），每条消息只估算一次，
+ * 结果按消息实例弱引用缓存，消息被丢弃后随之回收。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ContextWindow {
+
+    private final AiContextConfig config;
+    private final Map<ChatMessage, Integer> tokenCache = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Counter trimmedCounter;
+
+    public ContextWindow(AiContextConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.trimmedCounter = Counter.builder("ai.context.trimmed")
+                .description("因超出token预算被丢弃的历史消息数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 指定模型的历史消息token预算
+     */
+    public int budget(String model) {
+        return config.getModelBudgets().getOrDefault(model, config.getMaxHistoryTokens());
+    }
+
+    /**
+     * 将会话历史裁剪到模型预算以内
+     *
+     * @return 被丢弃的消息条数
+     */
+    public int trim(BotChatContext botChatContext, String model) {
+        List<ChatMessage> messages = botChatContext.getMessages();
+        if (messages == null || messages.size() <= config.getKeepRecentMessages()) {
+            return 0;
+        }
+        int total = estimate(messages);
+        int budget = budget(model);
+        if (total <= budget) {
+            return 0;
+        }
+        int target = (int) (budget * config.getTrimToRatio());
+        int drop = 0;
+        int removable = messages.size() - config.getKeepRecentMessages();
+        while (drop < removable && total > target) {
+            total -= estimate(messages.get(drop));
+            drop++;
+        }
+        // 历史须以用户消息开头，不留孤立的助手回复
+        while (drop < removable && messages.get(drop).getRole() == ChatMessageRole.ASSISTANT) {
+            total -= estimate(messages.get(drop));
+            drop++;
+        }
+        messages.subList(0, drop).clear();
+        trimmedCounter.increment(drop);
+        log.info("会话[{}]历史超出预算{}，丢弃最早的{}条消息，剩余{}条约{}token",
+                botChatContext.getChatId(), budget, drop, messages.size(), total);
+        return drop;
+    }
+
+    /**
+     * 丢弃 boundary 及其之前的历史，用于这部分对话已写入记忆摘要之后；之后的消息全部保留
+     * <p>boundary 已被裁剪出历史时不做任何丢弃</p>
+     *
+     * @param boundary 已写入摘要的最后一条消息（按实例比较）
+     */
+    public void dropThrough(BotChatContext botChatContext, ChatMessage boundary) {
+        List<ChatMessage> messages = botChatContext.getMessages();
+        if (messages == null) {
+            return;
+        }
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) == boundary) {
+                messages.subList(0, i + 1).clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 估算一组消息的token数
+     */
+    public int estimate(List<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimate(message);
+        }
+        return total;
+    }
+
+    /**
+     * 估算单条消息的token数（带缓存）
+     */
+    public int estimate(ChatMessage message) {
+        Integer cached = tokenCache.get(message);
+        if (cached != null) {
+            return cached;
+        }
+        // 每条消息另有约4个token的角色和分隔开销
+        int tokens = estimate(message.getContent() == null ? "" : message.getContent().toString()) + 4;
+        tokenCache.put(message, tokens);
+        return tokens;
+    }
+
+    /**
+     * 估算文本的token数
+     */
+    public static int estimate(String text) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isIdeographic(c) || (c >= 0x3000 && c <= 0x30FF) || (c >= 0xFF00 && c <= 0xFFEF)) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+}
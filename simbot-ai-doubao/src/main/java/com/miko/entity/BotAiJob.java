@@ -0,0 +1,21 @@
+package com.miko.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class BotAiJob {
+    private Long jobId; // 任务ID
+    private String jobType; // 任务类型
+    private String targetId; // 任务对象ID
+    private String payload; // 任务输入
+    private Integer status; // 状态（0待执行 1执行中 2成功 3失败）
+    private Integer attempts; // 已执行次数
+    private String result; // 任务输出
+    private String error; // 最近一次失败原因
+    private LocalDateTime createTime; // 创建时间
+    private LocalDateTime updateTime; // 更新时间
+}
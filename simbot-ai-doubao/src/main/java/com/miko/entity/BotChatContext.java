@@ -20,6 +20,15 @@ public class BotChatContext {
     private List<ChatMessage> messages; // 历史对话消息列表
     // 新增：记录当前使用的模型（用于检测模型切换）
     private String currentModel;
+    // 上下文链实际使用的模型，链只能在同一模型上延续
+    private String chainModel;
+    // 上下文链中已发送的系统提示前缀和状态，前缀变化时需重开上下文，状态变化时需补发
+    private String systemPrefix;
+    private String systemState;
+    // 只记入本地历史、尚未进入上下文链的消息（如命中群聊回复缓存的轮次），下一轮沿用上下文链时补发
+    private List<ChatMessage> unsentMessages;
+    // 最近一轮是否直接取自群聊回复缓存（没有调用AI），调用方据此退回本轮占用的配额
+    private boolean lastReplyCached;
 
     // ========== 核心：新增清空上下文的方法 ==========
     public void clearContext() {
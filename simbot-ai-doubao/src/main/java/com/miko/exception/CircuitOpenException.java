@@ -0,0 +1,23 @@
+package com.miko.exception;
+
+import lombok.Getter;
+
+/**
+ * 熔断异常类
+ * <p>
+ * 模型的熔断器处于打开状态时直接抛出，不再发起调用
+ * </p>
+ */
+@Getter
+public class CircuitOpenException extends ApiException {
+
+    /**
+     * 被熔断的模型
+     */
+    private final String model;
+
+    public CircuitOpenException(String model) {
+        super("模型[" + model + "]已熔断，暂停调用");
+        this.model = model;
+    }
+}
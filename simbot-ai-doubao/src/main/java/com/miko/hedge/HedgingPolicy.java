@@ -0,0 +1,174 @@
+package com.miko.hedge;
+
+import com.miko.config.AiHedgeConfig;
+import com.miko.config.VolcArkConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * 对冲请求策略
+ * <p>
+ * 主模型的耗时按调用方式分别统计（整段响应的完成耗时、流式响应的首个内容耗时），各保留最近 window 个样本，
+ * 等待时间取其 percentile 分位数并限制在 [min-delay, max-delay] 之间，样本不足时使用 initial-delay。
+ * </p>
+ * <p>
+ * 额外调用受额度限制：每次主调用积累 max-extra-ratio 个额度，每次对冲消耗1个，最多积累 max-burst 个，
+ * 长期来看对冲带来的额外调用不超过主调用的 max-extra-ratio。
+ * </p>
+ */
+@Component
+public class HedgingPolicy {
+
+    private final AiHedgeConfig config;
+    private final VolcArkConfig volcArkConfig;
+    private final LatencyWindow responseLatency;
+    private final LatencyWindow firstOutputLatency;
+    private double credits;
+
+    private final Counter firedCounter;
+    private final Counter wonCounter;
+    private final Counter budgetExhaustedCounter;
+
+    public HedgingPolicy(AiHedgeConfig config, VolcArkConfig volcArkConfig, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.volcArkConfig = volcArkConfig;
+        this.responseLatency = new LatencyWindow(config.getWindow());
+        this.firstOutputLatency = new LatencyWindow(config.getWindow());
+        this.firedCounter = Counter.builder("ai.hedge")
+                .description("对冲请求数")
+                .tag("result", "fired")
+                .register(meterRegistry);
+        this.wonCounter = Counter.builder("ai.hedge")
+                .description("对冲请求数")
+                .tag("result", "won")
+                .register(meterRegistry);
+        this.budgetExhaustedCounter = Counter.builder("ai.hedge")
+                .description("对冲请求数")
+                .tag("result", "budget_exhausted")
+                .register(meterRegistry);
+        Gauge.builder("ai.hedge.delay", this, policy -> policy.responseDelayMillis())
+                .description("整段响应的对冲等待时间（毫秒）")
+                .tag("mode", "response")
+                .register(meterRegistry);
+        Gauge.builder("ai.hedge.delay", this, policy -> policy.firstOutputDelayMillis())
+                .description("流式响应的对冲等待时间（毫秒）")
+                .tag("mode", "stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 本轮是否可以对冲：已开启、对冲模型可用且与主模型不同
+     * <p>返回true时同时为本次主调用积累额度</p>
+     */
+    public boolean applies(String primaryModel) {
+        String model = config.getModel();
+        if (!config.isEnabled() || model == null || model.equals(primaryModel)
+                || !volcArkConfig.getModels().contains(model)) {
+            return false;
+        }
+        synchronized (this) {
+            credits = Math.min(config.getMaxBurst(), credits + config.getMaxExtraRatio());
+        }
+        return true;
+    }
+
+    /**
+     * 对冲使用的模型
+     */
+    public String getModel() {
+        return config.getModel();
+    }
+
+    /**
+     * 主调用超过等待时间仍未完成，尝试占用一次对冲额度
+     */
+    public boolean tryHedge() {
+        synchronized (this) {
+            if (credits < 1) {
+                budgetExhaustedCounter.increment();
+                return false;
+            }
+            credits -= 1;
+        }
+        firedCounter.increment();
+        return true;
+    }
+
+    /**
+     * 对冲请求先于主请求完成
+     */
+    public void hedgeWon() {
+        wonCounter.increment();
+    }
+
+    public long responseDelayMillis() {
+        return delay(responseLatency);
+    }
+
+    public long firstOutputDelayMillis() {
+        return delay(firstOutputLatency);
+    }
+
+    /**
+     * 记录主模型整段响应的耗时；被对冲取代时记录放弃时的耗时（实际耗时至少为此）
+     */
+    public void recordResponse(long elapsedNanos) {
+        responseLatency.record(elapsedNanos / 1_000_000);
+    }
+
+    /**
+     * 记录主模型流式响应首个内容的耗时
+     */
+    public void recordFirstOutput(long elapsedNanos) {
+        firstOutputLatency.record(elapsedNanos / 1_000_000);
+    }
+
+    private long delay(LatencyWindow window) {
+        long value = window.percentile(config.getPercentile());
+        if (value < 0) {
+            return config.getInitialDelay().toMillis();
+        }
+        return Math.clamp(value, config.getMinDelay().toMillis(), config.getMaxDelay().toMillis());
+    }
+
+    /**
+     * 最近N个耗时样本，分位数在样本变化后首次查询时重新计算
+     */
+    private static final class LatencyWindow {
+        private static final int MIN_SAMPLES = 20;
+
+        private final long[] samples;
+        private int count;
+        private int next;
+        private long cached = -1;
+        private boolean dirty;
+
+        private LatencyWindow(int size) {
+            this.samples = new long[Math.max(MIN_SAMPLES, size)];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            dirty = true;
+        }
+
+        synchronized long percentile(double p) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            if (dirty) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                cached = sorted[Math.clamp((int) Math.ceil(p * count) - 1, 0, count - 1)];
+                dirty = false;
+            }
+            return cached;
+        }
+    }
+}
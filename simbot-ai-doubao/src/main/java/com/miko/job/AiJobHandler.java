@@ -0,0 +1,23 @@
+package com.miko.job;
+
+import com.miko.entity.BotAiJob;
+
+/**
+ * AI后台任务处理器，每种 {@link AiJobType} 对应一个 Spring Bean
+ */
+public interface AiJobHandler {
+
+    /**
+     * 处理的任务类型
+     */
+    AiJobType type();
+
+    /**
+     * 执行任务，在后台任务线程上调用
+     *
+     * @param job 任务
+     * @return 任务输出，记入 bot_ai_job.result
+     * @throws Exception 执行失败，未超过重试次数时稍后重试
+     */
+    String handle(BotAiJob job) throws Exception;
+}
@@ -0,0 +1,278 @@
+package com.miko.job;
+
+import com.miko.admission.DegradationLadder;
+import com.miko.admission.DegradationLevel;
+import com.miko.config.AiJobConfig;
+import com.miko.entity.BotAiJob;
+import com.miko.mapper.BotAiJobMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AI后台任务队列
+ * <p>
+ * 记忆摘要、定时任务内容预生成等不需要即时响应的调用先写入 bot_ai_job，重启后不会丢失；
+ * 同一对象尚未执行的同类任务只保留一个（记忆摘要等可追加的类型把输入追加到末尾）。
+ * </p>
+ * <p>
+ * 执行与实时回复完全隔离：使用独立的固定并发线程池，只在降级阶梯处于正常等级时领取任务，
+ * 实时回复一旦开始排队（降级）就不再领取新任务。领取、完成都以数据库状态为准，失败的任务在 max-attempts 次内重试。
+ * 定时任务内容预生成等 {@link AiJobType#isOffPeakOnly() 只在低峰期执行} 的类型只在 ai.job 配置的低峰期内领取；
+ * 方舟目前没有可供运行时SDK调用的批量推理接口，因此以“低峰期 + 小并发”代替。
+ * 记忆摘要的结果决定上下文链何时重开，等到低峰期会让活跃会话的链整天增长，因此提交后立即领取，
+ * 由单独的 immediate-concurrency 个线程执行，不占用也不受限于低峰期任务的并发。
+ * </p>
+ * <p>
+ * 已结束的任务保留 ai.job.retention 后删除，任务输入中的私聊记录不会长期留存。
+ * </p>
+ */
+@Slf4j
+@Component
+public class AiJobQueue {
+
+    private static final int MAX_ERROR_CHARS = 500;
+
+    private final AiJobConfig config;
+    private final BotAiJobMapper botAiJobMapper;
+    private final DegradationLadder degradationLadder;
+    private final ObjectProvider<AiJobHandler> handlerProvider;
+    private final MeterRegistry meterRegistry;
+    private final Lane offPeakLane;
+    private final Lane immediateLane;
+    /**
+     * 异步提交用的单线程执行器：按调用顺序写库，不与任务执行争用线程
+     */
+    private final ExecutorService submitter = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("ai-job-submit").factory());
+    private volatile Map<AiJobType, AiJobHandler> handlers;
+
+    public AiJobQueue(AiJobConfig config, BotAiJobMapper botAiJobMapper, DegradationLadder degradationLadder,
+                      ObjectProvider<AiJobHandler> handlerProvider, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.botAiJobMapper = botAiJobMapper;
+        this.degradationLadder = degradationLadder;
+        this.handlerProvider = handlerProvider;
+        this.meterRegistry = meterRegistry;
+        this.offPeakLane = new Lane(config.getConcurrency(), "ai-job-");
+        this.immediateLane = new Lane(config.getImmediateConcurrency(), "ai-job-immediate-");
+        Gauge.builder("ai.job.running", this, q -> q.offPeakLane.inFlight.get() + q.immediateLane.inFlight.get())
+                .description("正在执行的AI后台任务数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void recover() {
+        int reset = botAiJobMapper.resetRunning();
+        if (reset > 0) {
+            log.info("{}个上次未执行完的AI后台任务已退回待执行", reset);
+        }
+    }
+
+    /**
+     * 提交任务；同一对象已有待执行的同类任务时，可追加的类型把输入追加到该任务，其余类型忽略本次提交
+     *
+     * @param type     任务类型
+     * @param targetId 任务对象ID
+     * @param payload  任务输入
+     */
+    public void submit(AiJobType type, String targetId, String payload) {
+        boolean pending = type.isAppendable()
+                ? botAiJobMapper.appendPending(type.name(), targetId, payload, config.getMaxPayloadChars()) > 0
+                : botAiJobMapper.countPending(type.name(), targetId) > 0;
+        if (pending) {
+            log.debug("AI后台任务[{}:{}]已有待执行任务", type, targetId);
+            return;
+        }
+        BotAiJob job = new BotAiJob();
+        job.setJobType(type.name());
+        job.setTargetId(targetId);
+        job.setPayload(payload.length() > config.getMaxPayloadChars()
+                ? payload.substring(payload.length() - config.getMaxPayloadChars())
+                : payload);
+        botAiJobMapper.insert(job);
+        log.debug("AI后台任务[{}:{}]已入队，ID={}", type, targetId, job.getJobId());
+        if (!type.isOffPeakOnly() && admitting()) {
+            dispatch(type, immediateLane);
+        }
+    }
+
+    /**
+     * 异步提交任务，调用方不等待写库；提交失败只记录日志
+     *
+     * @see #submit(AiJobType, String, String)
+     */
+    public CompletableFuture<Void> submitAsync(AiJobType type, String targetId, String payload) {
+        return CompletableFuture.runAsync(() -> submit(type, targetId, payload), submitter)
+                .whenComplete((_, e) -> {
+                    if (e != null) {
+                        log.warn("AI后台任务[{}:{}]提交失败", type, targetId, e);
+                    }
+                });
+    }
+
+    /**
+     * 对象在某时间之后最近一次成功的任务输出，没有时返回null
+     */
+    public String latestResult(AiJobType type, String targetId, LocalDateTime since) {
+        return botAiJobMapper.selectLatestResult(type.name(), targetId, since);
+    }
+
+    /**
+     * 定期领取任务，空闲名额有多少领多少；低峰期外只领取不限低峰期的类型（降级期间推迟的、失败待重试的）
+     */
+    @Scheduled(fixedDelayString = "${ai.job.poll-interval:60s}")
+    public void poll() {
+        if (!admitting()) {
+            return;
+        }
+        boolean offPeak = offPeak(LocalTime.now());
+        for (AiJobType type : AiJobType.values()) {
+            if (!type.isOffPeakOnly()) {
+                dispatch(type, immediateLane);
+            } else if (offPeak) {
+                dispatch(type, offPeakLane);
+            }
+        }
+    }
+
+    private boolean admitting() {
+        return config.isEnabled() && degradationLadder.current() == DegradationLevel.NORMAL;
+    }
+
+    /**
+     * 领取某类任务交给对应的线程池，定时轮询和提交线程都会调用，加锁避免重复计算空闲名额
+     */
+    private synchronized void dispatch(AiJobType type, Lane lane) {
+        int free = lane.concurrency - lane.inFlight.get();
+        if (free <= 0) {
+            return;
+        }
+        for (BotAiJob job : botAiJobMapper.selectPending(type.name(), free)) {
+            if (botAiJobMapper.claim(job.getJobId()) == 0) {
+                continue;
+            }
+            job.setAttempts(job.getAttempts() + 1);
+            lane.inFlight.incrementAndGet();
+            lane.executor.execute(() -> {
+                boolean done = false;
+                try {
+                    done = run(job);
+                } finally {
+                    lane.inFlight.decrementAndGet();
+                }
+                // 立即执行的类型在名额占满时提交的任务接着领取；失败的留给下次轮询，避免无间隔地重试
+                if (done && lane == immediateLane && admitting()) {
+                    dispatch(type, lane);
+                }
+            });
+        }
+    }
+
+    /**
+     * 每天低峰期结束后删除超过保留期的已结束任务
+     */
+    @Scheduled(cron = "0 30 7 * * ?")
+    public void purge() {
+        int deleted = botAiJobMapper.deleteFinishedBefore(LocalDateTime.now().minus(config.getRetention()));
+        if (deleted > 0) {
+            log.info("已删除{}个超过保留期的AI后台任务", deleted);
+        }
+    }
+
+    /**
+     * 执行任务
+     *
+     * @return 是否执行成功
+     */
+    private boolean run(BotAiJob job) {
+        AiJobType type = AiJobType.valueOf(job.getJobType());
+        AiJobHandler handler = handlers().get(type);
+        if (handler == null) {
+            finish(job, AiJobStatus.FAILED, null, "没有对应的任务处理器");
+            return false;
+        }
+        try {
+            String result = handler.handle(job);
+            finish(job, AiJobStatus.DONE, result, null);
+            log.info("AI后台任务[{}:{}]执行成功，ID={}", type.getDescription(), job.getTargetId(), job.getJobId());
+            return true;
+        } catch (Exception e) {
+            boolean retry = job.getAttempts() < config.getMaxAttempts();
+            finish(job, retry ? AiJobStatus.PENDING : AiJobStatus.FAILED, null, String.valueOf(e));
+            log.warn("AI后台任务[{}:{}]第{}次执行失败{}，ID={}", type.getDescription(), job.getTargetId(),
+                    job.getAttempts(), retry ? "，稍后重试" : "", job.getJobId(), e);
+            return false;
+        }
+    }
+
+    private void finish(BotAiJob job, AiJobStatus status, String result, String error) {
+        if (error != null && error.length() > MAX_ERROR_CHARS) {
+            error = error.substring(0, MAX_ERROR_CHARS);
+        }
+        botAiJobMapper.finish(job.getJobId(), status.getCode(), result, error);
+        Counter.builder("ai.job")
+                .description("AI后台任务执行次数")
+                .tag("type", job.getJobType())
+                .tag("result", status.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Map<AiJobType, AiJobHandler> handlers() {
+        if (handlers == null) {
+            Map<AiJobType, AiJobHandler> map = new EnumMap<>(AiJobType.class);
+            handlerProvider.orderedStream().forEach(handler -> map.put(handler.type(), handler));
+            handlers = map;
+        }
+        return handlers;
+    }
+
+    /**
+     * 当前是否在低峰期内，结束时间早于开始时间表示跨零点
+     */
+    private boolean offPeak(LocalTime now) {
+        LocalTime start = config.getOffPeakStart();
+        LocalTime end = config.getOffPeakEnd();
+        return start.isBefore(end)
+                ? !now.isBefore(start) && now.isBefore(end)
+                : !now.isBefore(start) || now.isBefore(end);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        submitter.shutdown();
+        offPeakLane.executor.shutdownNow();
+        immediateLane.executor.shutdownNow();
+    }
+
+    /**
+     * 一组共享并发名额的任务类型：固定大小的线程池和正在执行的任务数
+     */
+    private static final class Lane {
+        private final int concurrency;
+        private final ExecutorService executor;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Lane(int concurrency, String threadName) {
+            this.concurrency = Math.max(1, concurrency);
+            this.executor = Executors.newFixedThreadPool(this.concurrency, Thread.ofVirtual().name(threadName, 0).factory());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.miko.job;
+
+import lombok.Getter;
+
+/**
+ * AI后台任务状态，code 对应 bot_ai_job.status
+ */
+@Getter
+public enum AiJobStatus {
+    PENDING(0, "待执行"),
+    RUNNING(1, "执行中"),
+    DONE(2, "成功"),
+    FAILED(3, "失败");
+
+    private final int code;
+    private final String description;
+
+    AiJobStatus(int code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+}
@@ -0,0 +1,28 @@
+package com.miko.job;
+
+import lombok.Getter;
+
+/**
+ * AI后台任务类型
+ */
+@Getter
+public enum AiJobType {
+    MEMORY_SUMMARY("记忆摘要", true, false),
+    TASK_CONTENT("定时任务内容预生成", false, true);
+
+    private final String description;
+    /**
+     * 同一对象已有待执行任务时，新提交的输入是追加到该任务（true）还是直接忽略（false）
+     */
+    private final boolean appendable;
+    /**
+     * 是否只在低峰期执行（true）；否则提交后立即执行，并发由 ai.job.immediate-concurrency 单独限制
+     */
+    private final boolean offPeakOnly;
+
+    AiJobType(String description, boolean appendable, boolean offPeakOnly) {
+        this.description = description;
+        this.appendable = appendable;
+        this.offPeakOnly = offPeakOnly;
+    }
+}
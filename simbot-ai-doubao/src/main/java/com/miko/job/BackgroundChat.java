@@ -0,0 +1,82 @@
+package com.miko.job;
+
+import com.miko.config.AiJobConfig;
+import com.miko.config.AiResilienceConfig;
+import com.miko.config.VolcArkConfig;
+import com.miko.resilience.ArkGuard;
+import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionRequest;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessageRole;
+import com.volcengine.ark.runtime.service.ArkService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台任务使用的单轮对话：不带上下文、关闭深度思考
+ * <p>
+ * 与实时回复完全隔离：使用自己的 ArkService（独立的连接池和调度器，并发上限为 ai.job.concurrency），
+ * 以及自己的 {@link ArkGuard}（scope=job），熔断器和重试额度不与实时回复共享。
+ * </p>
+ */
+@Component
+public class BackgroundChat {
+
+    private final VolcArkConfig volcArkConfig;
+    private final ArkService arkService;
+    private final ArkGuard arkGuard;
+
+    public BackgroundChat(VolcArkConfig volcArkConfig, AiJobConfig aiJobConfig,
+                          AiResilienceConfig aiResilienceConfig, MeterRegistry meterRegistry) {
+        this.volcArkConfig = volcArkConfig;
+        int concurrency = Math.max(1, aiJobConfig.getConcurrency());
+        Dispatcher dispatcher = new Dispatcher(Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("ark-job-http-", 0).factory()));
+        dispatcher.setMaxRequests(concurrency);
+        dispatcher.setMaxRequestsPerHost(concurrency);
+        this.arkService = ArkService.builder()
+                .apiKey(volcArkConfig.getApiKey())
+                .baseUrl(volcArkConfig.getBaseUrl())
+                .connectTimeout(volcArkConfig.getHttp().getConnectTimeout())
+                .timeout(volcArkConfig.getHttp().getReadTimeout())
+                .connectionPool(new ConnectionPool(concurrency, volcArkConfig.getHttp().getKeepAlive().toMillis(),
+                        TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .build();
+        this.arkGuard = new ArkGuard(aiResilienceConfig, meterRegistry, ArkGuard.SCOPE_JOB);
+    }
+
+    /**
+     * @param model        期望使用的模型，不在可用列表时退回当前对话模型
+     * @param systemPrompt 系统提示
+     * @param input        用户输入
+     * @return 模型输出（已去除首尾空白）
+     */
+    public String complete(String model, String systemPrompt, String input) throws Exception {
+        ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model(available(model))
+                .messages(List.of(
+                        ChatMessage.builder().role(ChatMessageRole.SYSTEM).content(systemPrompt).build(),
+                        ChatMessage.builder().role(ChatMessageRole.USER).content(input).build()))
+                .thinking(new ChatCompletionRequest.ChatCompletionRequestThinking("disabled"))
+                .build();
+        return String.valueOf(arkGuard.call(request.getModel(), () -> arkService.createChatCompletion(request))
+                .getChoices().getFirst().getMessage().getContent()).strip();
+    }
+
+    private String available(String model) {
+        List<String> models = volcArkConfig.getModels();
+        return models != null && models.contains(model) ? model : volcArkConfig.getModel();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        arkService.shutdownExecutor();
+    }
+}
@@ -0,0 +1,90 @@
+package com.miko.log;
+
+import com.miko.config.ConversationLogConfig;
+import com.miko.util.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话日志
+ * <p>
+ * 完整的Prompt和模型响应动辄几KB，不再写入主日志，而是写入独立的 conversation 日志通道
+ * （logback-spring.xml 中配置为异步队列，队列满时直接丢弃，不阻塞调用方）。
+ * </p>
+ * <p>
+ * 按会话ID采样，被选中的会话记录每一轮，便于完整回看；未选中或通道关闭时直接返回，不做任何序列化。
+ * </p>
+ * <p>
+ * 注意：被采样的轮次会在调用方线程上完成序列化（JSON）和按 max-payload-chars 截断，
+ * 异步队列只负责落盘。采样率即是调用方线程上这部分开销的上限。
+ * </p>
+ */
+@Component
+public class ConversationLog {
+
+    private static final Logger log = LoggerFactory.getLogger("conversation");
+
+    private final ConversationLogConfig config;
+
+    public ConversationLog(ConversationLogConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 记录一轮对话中的一个阶段
+     *
+     * @param chatId  会话ID
+     * @param stage   阶段，如 prompt / response
+     * @param payload 内容，仅在被采样时才序列化
+     */
+    public void record(String chatId, String stage, Object payload) {
+        if (!isSampled(chatId)) {
+            return;
+        }
+        log.info("[{}] {}: {}", chatId, stage, cap(serialize(payload), config.getMaxPayloadChars()));
+    }
+
+    /**
+     * 会话是否被采样；同一会话的结果固定不变
+     */
+    public boolean isSampled(String chatId) {
+        if (!config.isEnabled() || !log.isInfoEnabled()) {
+            return false;
+        }
+        double rate = config.getSampleRate();
+        if (rate >= 1.0) {
+            return true;
+        }
+        if (rate <= 0.0 || chatId == null) {
+            return false;
+        }
+        // 打散hashCode后取低16位，按比例决定
+        int hash = chatId.hashCode() * 0x9E3779B9;
+        return (hash >>> 16) < rate * 65536;
+    }
+
+    /**
+     * 文本原样输出，其余对象序列化为JSON；序列化失败时退回 toString
+     */
+    private static String serialize(Object payload) {
+        if (payload == null || payload instanceof CharSequence) {
+            return String.valueOf(payload);
+        }
+        try {
+            return JsonUtils.toJson(payload);
+        } catch (RuntimeException e) {
+            return String.valueOf(payload);
+        }
+    }
+
+    /**
+     * 按最大字符数截断
+     */
+    private static String cap(String text, int maxChars) {
+        if (maxChars <= 0 || text.length() <= maxChars) {
+            return text;
+        }
+        return text.substring(0, maxChars) + "…(共" + text.length() + "字)";
+    }
+}
@@ -0,0 +1,88 @@
+package com.miko.mapper;
+
+import com.miko.entity.BotAiJob;
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface BotAiJobMapper {
+
+    /**
+     * 新增任务
+     *
+     * @param job 任务
+     */
+    @Insert("INSERT INTO `bot_ai_job` (`job_type`,`target_id`,`payload`,`status`,`attempts`) " +
+            "VALUES (#{jobType}, #{targetId}, #{payload}, 0, 0)")
+    @Options(useGeneratedKeys = true, keyProperty = "jobId")
+    void insert(BotAiJob job);
+
+    /**
+     * 追加到同一对象尚未执行的任务，输入超长时只保留末尾
+     *
+     * @return 更新的行数，0表示没有待执行的任务
+     */
+    @Update("UPDATE `bot_ai_job` SET `payload` = RIGHT(CONCAT(IFNULL(`payload`, ''), #{payload}), #{maxChars}) " +
+            "WHERE `job_type` = #{jobType} AND `target_id` = #{targetId} AND `status` = 0")
+    int appendPending(@Param("jobType") String jobType, @Param("targetId") String targetId,
+                      @Param("payload") String payload, @Param("maxChars") int maxChars);
+
+    /**
+     * 同一对象待执行的同类任务数
+     */
+    @Select("SELECT COUNT(*) FROM `bot_ai_job` WHERE `job_type` = #{jobType} AND `target_id` = #{targetId} AND `status` = 0")
+    int countPending(@Param("jobType") String jobType, @Param("targetId") String targetId);
+
+    /**
+     * 按先后顺序取某类待执行的任务
+     *
+     * @param jobType 任务类型
+     * @param limit   数量
+     */
+    @Select("SELECT `job_id`,`job_type`,`target_id`,`payload`,`status`,`attempts`,`create_time`,`update_time` " +
+            "FROM `bot_ai_job` WHERE `job_type` = #{jobType} AND `status` = 0 ORDER BY `job_id` LIMIT #{limit}")
+    List<BotAiJob> selectPending(@Param("jobType") String jobType, @Param("limit") int limit);
+
+    /**
+     * 领取任务
+     *
+     * @return 1表示领取成功，0表示已被领取
+     */
+    @Update("UPDATE `bot_ai_job` SET `status` = 1, `attempts` = `attempts` + 1 WHERE `job_id` = #{jobId} AND `status` = 0")
+    int claim(@Param("jobId") Long jobId);
+
+    /**
+     * 记录任务结束
+     *
+     * @param status 结束后的状态（成功、失败或退回待执行）
+     */
+    @Update("UPDATE `bot_ai_job` SET `status` = #{status}, `result` = #{result}, `error` = #{error} WHERE `job_id` = #{jobId}")
+    void finish(@Param("jobId") Long jobId, @Param("status") int status,
+                @Param("result") String result, @Param("error") String error);
+
+    /**
+     * 把上次进程退出时仍在执行的任务退回待执行
+     *
+     * @return 退回的任务数
+     */
+    @Update("UPDATE `bot_ai_job` SET `status` = 0 WHERE `status` = 1")
+    int resetRunning();
+
+    /**
+     * 删除某时间之前已结束（成功或失败）的任务
+     *
+     * @return 删除的任务数
+     */
+    @Delete("DELETE FROM `bot_ai_job` WHERE `status` IN (2, 3) AND `update_time` < #{before}")
+    int deleteFinishedBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * 查询对象在某时间之后最近一次成功的输出
+     */
+    @Select("SELECT `result` FROM `bot_ai_job` WHERE `job_type` = #{jobType} AND `target_id` = #{targetId} " +
+            "AND `status` = 2 AND `update_time` >= #{since} ORDER BY `job_id` DESC LIMIT 1")
+    String selectLatestResult(@Param("jobType") String jobType, @Param("targetId") String targetId,
+                              @Param("since") LocalDateTime since);
+}
@@ -17,6 +17,17 @@ public interface BotContactMapper {
             "WHERE contact_id = #{qqId}")
     Integer selectFavorabilityByQqId(@Param("qqId") String qqId);
 
+    /**
+     * 查询亲密等级，不存在返回 null
+     *
+     * @param qqId 发送者QQ_ID
+     * @return Integer
+     */
+    @Select("SELECT intimacy_level " +
+            "FROM bot_chat_contact " +
+            "WHERE contact_id = #{qqId}")
+    Integer selectIntimacyLevelByQqId(@Param("qqId") String qqId);
+
     /**
      * 初始化好友列表
      *
@@ -61,12 +72,12 @@ public interface BotContactMapper {
     void updateGoodFeeling(BotChatContact user);
 
     /**
-     * 获取好友用户
+     * 获取好友用户，contact_id 映射到 userId，更新好感度时按它定位记录
      *
      * @param qqId 发送者QQ_ID
      * @return BotChatContact
      */
-    @Select("SELECT * FROM bot_chat_contact WHERE contact_id = #{qqId}")
+    @Select("SELECT *, contact_id AS user_id FROM bot_chat_contact WHERE contact_id = #{qqId}")
     BotChatContact getFriendUser(@Param("qqId") String qqId);
 
     /**
@@ -77,4 +88,13 @@ public interface BotContactMapper {
      */
     @Update("UPDATE bot_chat_contact SET ai_model = #{targetModel} WHERE contact_id = #{qqId}")
     void updateAiModel(@Param("qqId") String qqId, String targetModel);
+
+    /**
+     * 更新AI记忆摘要
+     *
+     * @param qqId    发送者QQ_ID
+     * @param summary 记忆摘要
+     */
+    @Update("UPDATE bot_chat_contact SET ai_memory_summary = #{summary} WHERE contact_id = #{qqId}")
+    void updateAiMemorySummary(@Param("qqId") String qqId, @Param("summary") String summary);
 }
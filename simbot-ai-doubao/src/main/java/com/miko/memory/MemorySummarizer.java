@@ -0,0 +1,193 @@
+package com.miko.memory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miko.config.AiMemoryConfig;
+import com.miko.context.ContextWindow;
+import com.miko.entity.BotAiJob;
+import com.miko.entity.BotChatContact;
+import com.miko.entity.BotChatContext;
+import com.miko.job.AiJobHandler;
+import com.miko.job.AiJobQueue;
+import com.miko.job.AiJobType;
+import com.miko.job.BackgroundChat;
+import com.miko.service.BotContactService;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessageRole;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 记忆摘要
+ * <p>
+ * 私聊每轮结束后累计轮数和token数，达到 ai.memory.trigger-turns 或 trigger-tokens 时，
+ * 把这段时间新增的对话提交到 {@link AiJobQueue}，由后台任务立即（不等低峰期，降级期间推迟）用便宜模型与已有记忆合并压缩后
+ * 写入 bot_chat_contact.ai_memory_summary。
+ * 写入成功后标记该会话需要重开上下文链：下一轮由豆包服务丢弃旧的 previousResponseId 和已被摘要的历史
+ * （到最后一次提交的消息为止，之后的对话保留），新链以包含新记忆的系统提示开始，避免活跃用户的上下文链越来越长、越来越慢。
+ * </p>
+ * <p>
+ * 同一好友尚未执行的摘要任务会合并，回复线程只做计数和拼接对话，写库交给任务队列异步完成，从不等待摘要。
+ * 计数进度和重开标记在会话长期不活跃后回收。
+ * </p>
+ */
+@Slf4j
+@Component
+public class MemorySummarizer implements AiJobHandler {
+
+    private static final String SUMMARY_PROMPT = "你负责维护聊天机器人对一位好友的长期记忆。"
+            + "请把【已有记忆】和【近期对话】合并成一段新的记忆，只保留对以后聊天有用的事实："
+            + "对方的称呼、身份、喜好、经历、约定、近期在意的事和你们关系的变化。"
+            + "用第三人称“TA”，不要复述寒暄和具体对白，不超过%d字，直接输出记忆内容。";
+
+    /**
+     * 进度和重开标记的保留时长：摘要任务在降级期间推迟、失败后等下次轮询重试，需覆盖提交到执行之间的等待
+     */
+    private static final Duration IDLE_EXPIRY = Duration.ofDays(2);
+
+    private final AiMemoryConfig config;
+    private final BackgroundChat backgroundChat;
+    private final AiJobQueue aiJobQueue;
+    private final BotContactService botContactService;
+    private final ContextWindow contextWindow;
+    private final Cache<String, Progress> progress = Caffeine.newBuilder().expireAfterAccess(IDLE_EXPIRY).build();
+    /**
+     * 已写入新记忆、等待重开上下文链的会话: key = chatId, value = 已被摘要的最后一条消息
+     */
+    private final Cache<String, ChatMessage> restartRequested = Caffeine.newBuilder().expireAfterWrite(IDLE_EXPIRY).build();
+
+    private final Counter successCounter;
+    private final Counter failureCounter;
+
+    public MemorySummarizer(AiMemoryConfig config, BackgroundChat backgroundChat, AiJobQueue aiJobQueue,
+                            BotContactService botContactService, ContextWindow contextWindow, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.backgroundChat = backgroundChat;
+        this.aiJobQueue = aiJobQueue;
+        this.botContactService = botContactService;
+        this.contextWindow = contextWindow;
+        this.successCounter = Counter.builder("ai.memory.summary")
+                .description("记忆摘要任务数")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("ai.memory.summary")
+                .description("记忆摘要任务数")
+                .tag("result", "failure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一轮对话结束，累计进度并在达到阈值时提交摘要任务
+     * <p>由会话的回复线程调用，同一会话不会并发调用</p>
+     *
+     * @param botChatContext 会话上下文，历史中已包含本轮消息
+     * @param turnMessages   本轮新增的消息（用户+助手）
+     */
+    public void onTurn(BotChatContext botChatContext, List<ChatMessage> turnMessages) {
+        if (!config.isEnabled() || botChatContext.getChatType() != BotChatContext.ChatType.PRIVATE) {
+            return;
+        }
+        String chatId = botChatContext.getChatId();
+        Progress p = progress.get(chatId, _ -> new Progress());
+        p.turns++;
+        p.tokens += contextWindow.estimate(turnMessages);
+        if (p.turns < config.getTriggerTurns() && p.tokens < config.getTriggerTokens()) {
+            return;
+        }
+        // 只提交上次拼接过的最后一条消息之后的对话，未执行的任务会把多次提交的内容按顺序拼接
+        List<ChatMessage> history = botChatContext.getMessages();
+        StringBuilder transcript = new StringBuilder();
+        for (ChatMessage message : history.subList(indexAfter(history, p.transcribed), history.size())) {
+            transcript.append(message.getRole() == ChatMessageRole.ASSISTANT ? "你：" : "对方：")
+                    .append(message.getContent())
+                    .append('\n');
+        }
+        p.turns = 0;
+        p.tokens = 0;
+        ChatMessage last = history.getLast();
+        p.transcribed = last;
+        aiJobQueue.submitAsync(AiJobType.MEMORY_SUMMARY, chatId, transcript.toString())
+                .thenRun(() -> p.submitted = last);
+    }
+
+    /**
+     * 消息在历史中的下一个位置，按实例查找；消息已被裁剪或丢弃（或为null）时返回0，即历史全部是新对话
+     */
+    private static int indexAfter(List<ChatMessage> history, ChatMessage message) {
+        if (message != null) {
+            for (int i = history.size() - 1; i >= 0; i--) {
+                if (history.get(i) == message) {
+                    return i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 取走会话的重开标记：有新记忆写入后返回已被摘要的最后一条消息（只返回一次），否则返回 null
+     */
+    public ChatMessage takeRestart(String chatId) {
+        return restartRequested.asMap().remove(chatId);
+    }
+
+    @Override
+    public AiJobType type() {
+        return AiJobType.MEMORY_SUMMARY;
+    }
+
+    @Override
+    public String handle(BotAiJob job) throws Exception {
+        String chatId = job.getTargetId();
+        // 执行前已提交的对话都已合并进本任务，以此为已摘要的边界
+        Progress p = progress.getIfPresent(chatId);
+        ChatMessage boundary = p == null ? null : p.submitted;
+        try {
+            BotChatContact user = botContactService.getFriendUser(chatId);
+            if (user == null) {
+                return null;
+            }
+            String input = "【已有记忆】\n"
+                    + (user.getAiMemorySummary() == null || user.getAiMemorySummary().isBlank() ? "无" : user.getAiMemorySummary())
+                    + "\n\n【近期对话】\n"
+                    + job.getPayload();
+            String summary = backgroundChat.complete(config.getModel(),
+                    SUMMARY_PROMPT.formatted(config.getMaxSummaryChars()), input);
+            if (summary.isEmpty()) {
+                throw new IllegalStateException("摘要结果为空");
+            }
+            if (summary.length() > config.getMaxSummaryChars()) {
+                summary = summary.substring(0, config.getMaxSummaryChars());
+            }
+            botContactService.updateAiMemorySummary(chatId, summary);
+            if (boundary != null) {
+                restartRequested.put(chatId, boundary);
+            }
+            successCounter.increment();
+            log.info("会话[{}]记忆摘要已更新（{}字对话 -> {}字）", chatId, job.getPayload().length(), summary.length());
+            return summary;
+        } catch (Exception e) {
+            failureCounter.increment();
+            throw e;
+        }
+    }
+
+    private static final class Progress {
+        private int turns;
+        private int tokens;
+        /**
+         * 已拼接进摘要输入的最后一条消息，只由回复线程读写；
+         * 按实例而不是条数定位，缓存命中、补发等不按"一问一答"计入历史的轮次不影响切分
+         */
+        private ChatMessage transcribed;
+        /**
+         * 已写入任务队列的最后一条消息
+         */
+        private volatile ChatMessage submitted;
+    }
+}
@@ -0,0 +1,62 @@
+package com.miko.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 方舟上下文缓存命中统计
+ * <p>
+ * 按模型记录每次请求的输入token数和其中命中缓存的token数：
+ * <ul>
+ *     <li>ai.tokens.input / ai.tokens.cached：累计token数，两者之比即该模型的缓存命中率</li>
+ *     <li>ai.prompt.cache.hit.ratio：单次请求的命中比例（0~1）</li>
+ * </ul>
+ * </p>
+ */
+@Component
+public class PromptCacheMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public PromptCacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 记录一次请求的token用量
+     *
+     * @param model        实际请求的模型
+     * @param inputTokens  输入token数
+     * @param cachedTokens 输入中命中缓存的token数
+     */
+    public void record(String model, long inputTokens, long cachedTokens) {
+        if (inputTokens <= 0) {
+            return;
+        }
+        Meters m = meters.computeIfAbsent(model, _ -> new Meters(
+                Counter.builder("ai.tokens.input")
+                        .description("输入token数")
+                        .tag("model", model)
+                        .register(meterRegistry),
+                Counter.builder("ai.tokens.cached")
+                        .description("输入中命中上下文缓存的token数")
+                        .tag("model", model)
+                        .register(meterRegistry),
+                DistributionSummary.builder("ai.prompt.cache.hit.ratio")
+                        .description("单次请求输入token的缓存命中比例")
+                        .tag("model", model)
+                        .register(meterRegistry)));
+        m.input.increment(inputTokens);
+        m.cached.increment(cachedTokens);
+        m.hitRatio.record((double) cachedTokens / inputTokens);
+    }
+
+    private record Meters(Counter input, Counter cached, DistributionSummary hitRatio) {
+    }
+}
@@ -0,0 +1,56 @@
+package com.miko.provider;
+
+import com.miko.resilience.ArkGuard;
+import com.miko.routing.ModelTier;
+import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionRequest;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import com.volcengine.ark.runtime.service.ArkService;
+import io.reactivex.Flowable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 火山方舟流式对话，复用全局 ArkService 的连接池，经 {@link ArkGuard} 熔断和重试
+ */
+@Component
+@RequiredArgsConstructor
+public class ArkChatProvider implements ChatProvider {
+
+    public static final String NAME = "ark";
+
+    private final ArkService arkService;
+    private final ArkGuard arkGuard;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String resolveModel(ModelTier tier, String arkModel) {
+        return arkModel;
+    }
+
+    @Override
+    public Flowable<String> stream(String model, List<ChatMessage> messages, boolean thinking) {
+        return stream(ChatCompletionRequest.builder()
+                .model(model)
+                .messages(messages)
+                .thinking(thinking ? new ChatCompletionRequest.ChatCompletionRequestThinking("enabled") : null)
+                .build());
+    }
+
+    /**
+     * 按已构建好的请求流式对话
+     */
+    public Flowable<String> stream(ChatCompletionRequest request) {
+        return arkGuard.stream(request.getModel(), () -> arkService.streamChatCompletion(request))
+                .filter(choice -> choice.getChoices() != null && !choice.getChoices().isEmpty())
+                // 深度思考阶段的分片只有 reasoning_content，没有正文
+                .filter(choice -> choice.getChoices().getFirst().getMessage().getContent() != null)
+                .map(choice -> choice.getChoices().getFirst().getMessage().getContent().toString())
+                .filter(content -> !content.isEmpty());
+    }
+}
@@ -0,0 +1,35 @@
+package com.miko.provider;
+
+import com.miko.routing.ModelTier;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import io.reactivex.Flowable;
+
+import java.util.List;
+
+/**
+ * 流式对话服务商
+ */
+public interface ChatProvider {
+
+    /**
+     * 服务商名称
+     */
+    String getName();
+
+    /**
+     * 本轮实际使用的模型
+     *
+     * @param tier     模型路由档位
+     * @param arkModel 方舟模型路由（含降级）的结果
+     */
+    String resolveModel(ModelTier tier, String arkModel);
+
+    /**
+     * 流式对话，只输出正文分片；每次订阅发起一次新请求，取消订阅时中止请求
+     *
+     * @param model    模型
+     * @param messages 完整消息列表
+     * @param thinking 是否开启深度思考（不支持的服务商忽略）
+     */
+    Flowable<String> stream(String model, List<ChatMessage> messages, boolean thinking);
+}
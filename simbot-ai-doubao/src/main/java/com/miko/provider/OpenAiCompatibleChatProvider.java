@@ -0,0 +1,143 @@
+package com.miko.provider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.miko.exception.ApiException;
+import com.miko.routing.ModelTier;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.schedulers.Schedulers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * OpenAI 兼容接口的流式对话（DeepSeek、OpenAI 及本地兼容服务）
+ * <p>
+ * 每个服务商持有一个 {@link HttpClient}，连接在请求间复用；响应按 SSE 逐行解析，只取 choices[0].delta.content。
+ * HTTP 错误以 {@link ApiException} 抛出，错误码为状态码。
+ * 响应头和正文的每一行都须在 read-timeout 内到达，否则以 {@link HttpTimeoutException} 失败，
+ * 接受连接后停止响应的服务商不会一直占住会话。
+ * 不再使用时调用 {@link #close()} 中止进行中的请求并关闭其执行器。
+ * </p>
+ */
+public class OpenAiCompatibleChatProvider implements ChatProvider, AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE = "[DONE]";
+
+    private final String name;
+    private final URI endpoint;
+    private final String apiKey;
+    private final String model;
+    private final String fastModel;
+    private final Duration readTimeout;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient httpClient;
+
+    public OpenAiCompatibleChatProvider(String name, String baseUrl, String apiKey, String model, String fastModel,
+                                        Duration connectTimeout, Duration readTimeout) {
+        this.name = name;
+        this.endpoint = URI.create(baseUrl.replaceAll("/+$", "") + "/chat/completions");
+        this.apiKey = apiKey;
+        this.model = model;
+        this.fastModel = fastModel;
+        this.readTimeout = readTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String resolveModel(ModelTier tier, String arkModel) {
+        return tier == ModelTier.FAST && fastModel != null && !fastModel.isBlank() ? fastModel : model;
+    }
+
+    @Override
+    public void close() {
+        httpClient.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public Flowable<String> stream(String model, List<ChatMessage> messages, boolean thinking) {
+        return Flowable.using(
+                () -> send(model, messages),
+                lines -> Flowable.fromIterable(lines::iterator)
+                        // 在本服务商的执行器上逐行读取，相邻两行间隔超过 read-timeout 时调用方立即收到超时错误，
+                        // 读取线程随 Stream::close 关闭连接后退出
+                        .subscribeOn(Schedulers.from(executor))
+                        .timeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS, Flowable.error(() ->
+                                new HttpTimeoutException("服务商[" + name + "]响应正文超时")))
+                        .map(String::strip)
+                        .filter(line -> line.startsWith(DATA_PREFIX))
+                        .map(line -> line.substring(DATA_PREFIX.length()).strip())
+                        .takeWhile(data -> !DONE.equals(data))
+                        .flatMapMaybe(this::content),
+                Stream::close);
+    }
+
+    private Stream<String> send(String model, List<ChatMessage> messages) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint)
+                .timeout(readTimeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(body(model, messages)));
+        if (apiKey != null && !apiKey.isBlank()) {
+            request.header("Authorization", "Bearer " + apiKey);
+        }
+        HttpResponse<Stream<String>> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+        if (response.statusCode() >= 400) {
+            String error;
+            try (Stream<String> body = response.body()) {
+                error = body.collect(Collectors.joining("\n"));
+            }
+            throw new ApiException(response.statusCode(), "服务商[" + name + "]调用失败：" + error);
+        }
+        return response.body();
+    }
+
+    private static String body(String model, List<ChatMessage> messages) {
+        ObjectNode body = MAPPER.createObjectNode();
+        body.put("model", model);
+        body.put("stream", true);
+        ArrayNode array = body.putArray("messages");
+        for (ChatMessage message : messages) {
+            array.addObject()
+                    .put("role", message.getRole().name().toLowerCase(Locale.ROOT))
+                    .put("content", String.valueOf(message.getContent()));
+        }
+        return body.toString();
+    }
+
+    private Maybe<String> content(String data) {
+        try {
+            JsonNode content = MAPPER.readTree(data).path("choices").path(0).path("delta").path("content");
+            return content.isTextual() && !content.asText().isEmpty() ? Maybe.just(content.asText()) : Maybe.empty();
+        } catch (IOException e) {
+            return Maybe.error(new ApiException("服务商[" + name + "]返回了无法解析的内容：" + data, e));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.miko.provider;
+
+import com.miko.config.AiProviderConfig;
+import com.miko.resilience.ArkGuard;
+import com.miko.routing.ModelTier;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.reactivex.Flowable;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 服务商负载均衡
+ * <p>
+ * 每个服务商维护首字耗时和错误率的指数加权平均（EWMA），权重 = weight / (首字耗时 × (1 + error-penalty × 错误率))，
+ * 按权重随机选择，流量会自动向当前最快、最稳定的服务商倾斜；另有 exploration-ratio 的流量均匀分配，保证统计不过期。
+ * 流式对话的每一轮、非流式对话中开启新链的轮次参与选择；沿用方舟上下文链的轮次、好友指定了方舟模型的私聊只能发给方舟。
+ * 选中的服务商在输出任何内容前失败时，本轮改用权重次高的服务商重试一次。
+ * 非流式对话选中方舟时走 Responses 接口，不经过 {@link #track}，由调用方通过 {@link #recordSuccess} / {@link #recordFailure} 计入统计。
+ * 指标：ai.provider.ttft / ai.provider.error.rate / ai.provider.selected，均按 provider 区分。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ProviderBalancer {
+
+    private final AiProviderConfig config;
+    private final ArkChatProvider arkChatProvider;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    /**
+     * 由本类创建的服务商，关闭时一并释放其HTTP客户端
+     */
+    private final List<OpenAiCompatibleChatProvider> owned = new ArrayList<>();
+
+    public ProviderBalancer(AiProviderConfig config, ArkChatProvider arkChatProvider, ArkGuard arkGuard,
+                            MeterRegistry meterRegistry) {
+        this.config = config;
+        this.arkChatProvider = arkChatProvider;
+        for (AiProviderConfig.Provider provider : config.getProviders()) {
+            if (!provider.isEnabled()) {
+                continue;
+            }
+            ChatProvider chatProvider = switch (provider.getType()) {
+                case ARK -> arkChatProvider;
+                case OPENAI_COMPATIBLE -> {
+                    OpenAiCompatibleChatProvider openAi = new OpenAiCompatibleChatProvider(provider.getName(),
+                            provider.getBaseUrl(), provider.getApiKey(), provider.getModel(), provider.getFastModel(),
+                            config.getConnectTimeout(), config.getReadTimeout());
+                    owned.add(openAi);
+                    yield new GuardedChatProvider(openAi, arkGuard);
+                }
+            };
+            endpoints.add(new Endpoint(chatProvider, provider.getWeight(), meterRegistry));
+        }
+        if (endpoints.stream().noneMatch(endpoint -> endpoint.provider == arkChatProvider)) {
+            endpoints.addFirst(new Endpoint(arkChatProvider, 1.0, meterRegistry));
+        }
+        log.info("已启用的模型服务商：{}", endpoints.stream().map(endpoint -> endpoint.provider.getName()).toList());
+    }
+
+    /**
+     * 为本轮选择服务商
+     */
+    public ChatProvider select() {
+        if (!config.isEnabled() || endpoints.size() == 1) {
+            return arkChatProvider;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Endpoint selected;
+        if (random.nextDouble() < config.getExplorationRatio()) {
+            selected = endpoints.get(random.nextInt(endpoints.size()));
+        } else {
+            double[] weights = new double[endpoints.size()];
+            double total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = endpoints.get(i).weight();
+                total += weights[i];
+            }
+            double point = random.nextDouble(total);
+            int i = 0;
+            while (i < weights.length - 1 && (point -= weights[i]) >= 0) {
+                i++;
+            }
+            selected = endpoints.get(i);
+        }
+        selected.selected.increment();
+        return selected.provider;
+    }
+
+    /**
+     * 记录服务商本轮的首字耗时和成败；在输出任何内容前失败时改用另一个服务商
+     *
+     * @param provider 本轮选中的服务商
+     * @param contents 该服务商的正文流
+     * @param fallback 改用其他服务商时的正文流，参数为备选服务商
+     */
+    public Flowable<String> track(ChatProvider provider, Flowable<String> contents,
+                                  Function<ChatProvider, Flowable<String>> fallback) {
+        Flowable<String> tracked = measure(provider, () -> contents);
+        return Flowable.defer(() -> {
+            AtomicBoolean emitted = new AtomicBoolean();
+            return tracked.doOnNext(_ -> emitted.set(true))
+                    .onErrorResumeNext((Throwable e) -> {
+                        ChatProvider next = emitted.get() ? null : nextBest(provider);
+                        if (next == null) {
+                            return Flowable.error(e);
+                        }
+                        log.warn("服务商[{}]调用失败（{}），本轮改用[{}]", provider.getName(), e.toString(), next.getName());
+                        return measure(next, () -> fallback.apply(next));
+                    });
+        });
+    }
+
+    /**
+     * 记录一次没有经过 {@link #track} 的成功调用，用于方舟 Responses 接口的非流式对话
+     * <p>该接口没有首字事件，耗时取整个响应完成的时间</p>
+     *
+     * @param provider 本轮选中的服务商
+     * @param nanos    调用耗时
+     */
+    public void recordSuccess(ChatProvider provider, long nanos) {
+        Endpoint endpoint = endpoint(provider);
+        if (endpoint != null) {
+            endpoint.recordSuccess(nanos);
+        }
+    }
+
+    /**
+     * 记录一次没有经过 {@link #track} 的失败调用
+     *
+     * @param provider 本轮选中的服务商
+     */
+    public void recordFailure(ChatProvider provider) {
+        Endpoint endpoint = endpoint(provider);
+        if (endpoint != null) {
+            endpoint.recordFailure();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        owned.forEach(OpenAiCompatibleChatProvider::close);
+    }
+
+    private Flowable<String> measure(ChatProvider provider, Supplier<Flowable<String>> contents) {
+        Endpoint endpoint = endpoint(provider);
+        if (endpoint == null) {
+            return Flowable.defer(contents::get);
+        }
+        return Flowable.defer(() -> {
+            long startedAt = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean();
+            return contents.get()
+                    .doOnNext(_ -> {
+                        if (first.compareAndSet(false, true)) {
+                            endpoint.recordSuccess(System.nanoTime() - startedAt);
+                        }
+                    })
+                    .doOnError(_ -> endpoint.recordFailure())
+                    .doOnComplete(() -> {
+                        // 没有任何正文也算成功，耗时取完成时间
+                        if (first.compareAndSet(false, true)) {
+                            endpoint.recordSuccess(System.nanoTime() - startedAt);
+                        }
+                    });
+        });
+    }
+
+    private ChatProvider nextBest(ChatProvider failed) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        return endpoints.stream()
+                .filter(endpoint -> endpoint.provider != failed)
+                .max(Comparator.comparingDouble(Endpoint::weight))
+                .map(endpoint -> endpoint.provider)
+                .orElse(null);
+    }
+
+    private Endpoint endpoint(ChatProvider provider) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.provider == provider) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 服务商及其统计
+     */
+    private final class Endpoint {
+        private final ChatProvider provider;
+        private final double baseWeight;
+        private final Counter selected;
+        private double ttftNanos;
+        private double errorRate;
+
+        private Endpoint(ChatProvider provider, double baseWeight, MeterRegistry meterRegistry) {
+            this.provider = provider;
+            this.baseWeight = baseWeight;
+            this.ttftNanos = config.getInitialLatency().toNanos();
+            this.selected = Counter.builder("ai.provider.selected")
+                    .description("服务商被选中的次数")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+            Gauge.builder("ai.provider.ttft", this, endpoint -> endpoint.ttftNanos() / 1_000_000)
+                    .description("服务商首字耗时的指数加权平均（毫秒）")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+            Gauge.builder("ai.provider.error.rate", this, Endpoint::errorRate)
+                    .description("服务商错误率的指数加权平均")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+        }
+
+        synchronized double weight() {
+            return baseWeight / (Math.max(1, ttftNanos) * (1 + config.getErrorPenalty() * errorRate));
+        }
+
+        synchronized double ttftNanos() {
+            return ttftNanos;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        synchronized void recordSuccess(long nanos) {
+            double alpha = config.getEwmaAlpha();
+            ttftNanos += alpha * (nanos - ttftNanos);
+            errorRate += alpha * (0 - errorRate);
+        }
+
+        synchronized void recordFailure() {
+            errorRate += config.getEwmaAlpha() * (1 - errorRate);
+        }
+    }
+
+    /**
+     * 在 {@link ArkGuard} 熔断和重试保护下调用的服务商，熔断器以模型区分
+     */
+    private record GuardedChatProvider(ChatProvider delegate, ArkGuard arkGuard) implements ChatProvider {
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public String resolveModel(ModelTier tier, String arkModel) {
+            return delegate.resolveModel(tier, arkModel);
+        }
+
+        @Override
+        public Flowable<String> stream(String model, List<ChatMessage> messages, boolean thinking) {
+            return arkGuard.stream(model, () -> delegate.stream(model, messages, thinking));
+        }
+    }
+}
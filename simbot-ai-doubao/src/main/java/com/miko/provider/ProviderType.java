@@ -0,0 +1,18 @@
+package com.miko.provider;
+
+import lombok.Getter;
+
+/**
+ * 模型服务商接口类型
+ */
+@Getter
+public enum ProviderType {
+    ARK("火山方舟"),
+    OPENAI_COMPATIBLE("OpenAI兼容接口");
+
+    private final String description;
+
+    ProviderType(String description) {
+        this.description = description;
+    }
+}
@@ -0,0 +1,247 @@
+package com.miko.resilience;
+
+import com.miko.config.AiResilienceConfig;
+import com.miko.exception.ApiException;
+import com.miko.exception.CircuitOpenException;
+import com.volcengine.ark.runtime.exception.ArkHttpException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 方舟调用容错层
+ * <p>
+ * 所有 arkService 调用都经由这里：
+ * <ul>
+ *     <li>按模型独立熔断（{@link CircuitBreaker}），熔断期间直接抛出 {@link CircuitOpenException}，由调用方回复本地兜底文案</li>
+ *     <li>429/5xx 和网络异常视为可重试，按指数退避加随机抖动重试；重试总量受额度限制，
+ *     每次调用积累 budget-ratio 个额度，避免故障时重试把流量放大数倍</li>
+ *     <li>400 等参数错误不重试、也不计入熔断统计</li>
+ * </ul>
+ * 熔断器状态以 ai.breaker.state 暴露（0关闭 1打开 2半开），状态变化计入 ai.breaker.transition。
+ * </p>
+ * <p>
+ * 容器中的实例服务实时回复（scope=live）；后台任务另建独立实例（scope=job），熔断器和重试额度互不影响，
+ * 后台任务大量失败不会打开实时回复的熔断器。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ArkGuard {
+
+    /**
+     * 与具体模型无关的接口（查询/删除对话等）共用的熔断器名
+     */
+    public static final String RESPONSES_API = "responses-api";
+
+    /**
+     * 实时回复的容错范围
+     */
+    public static final String SCOPE_LIVE = "live";
+
+    /**
+     * 后台任务的容错范围
+     */
+    public static final String SCOPE_JOB = "job";
+
+    private final AiResilienceConfig config;
+    private final MeterRegistry meterRegistry;
+    private final String scope;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Counter retryCounter;
+    private final Counter retryBudgetExhaustedCounter;
+    private double retryCredits;
+
+    @Autowired
+    public ArkGuard(AiResilienceConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, SCOPE_LIVE);
+    }
+
+    /**
+     * @param scope 容错范围，熔断器和重试额度只在同一范围内共享
+     */
+    public ArkGuard(AiResilienceConfig config, MeterRegistry meterRegistry, String scope) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.scope = scope;
+        this.retryCounter = Counter.builder("ai.retry")
+                .description("方舟调用重试次数")
+                .tag("scope", scope)
+                .tag("result", "retried")
+                .register(meterRegistry);
+        this.retryBudgetExhaustedCounter = Counter.builder("ai.retry")
+                .description("方舟调用重试次数")
+                .tag("scope", scope)
+                .tag("result", "budget_exhausted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在熔断和重试保护下执行一次同步调用
+     *
+     * @param model 模型名，作为熔断器的维度
+     * @param call  实际调用
+     */
+    public <T> T call(String model, Callable<T> call) throws Exception {
+        CircuitBreaker breaker = breaker(model);
+        if (!breaker.tryAcquire()) {
+            throw new CircuitOpenException(model);
+        }
+        depositRetryCredit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = call.call();
+                breaker.onSuccess();
+                return result;
+            } catch (Exception e) {
+                if (!retryable(e)) {
+                    breaker.onIgnored();
+                    throw e;
+                }
+                if (attempt > config.getRetry().getMaxRetries() || !tryRetry()) {
+                    breaker.onFailure();
+                    throw e;
+                }
+                long backoff = backoffMillis(attempt);
+                log.warn("模型[{}]调用失败（{}），{}ms后第{}次重试", model, e.toString(), backoff, attempt);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    breaker.onIgnored();
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在熔断和重试保护下订阅一个流式调用
+     * <p>只有在尚未收到任何数据时才重试，已经输出的内容不会重复</p>
+     *
+     * @param model  模型名，作为熔断器的维度
+     * @param stream 每次订阅都发起一次新调用的流
+     */
+    public <T> Flowable<T> stream(String model, Supplier<Flowable<T>> stream) {
+        return Flowable.defer(() -> {
+            CircuitBreaker breaker = breaker(model);
+            if (!breaker.tryAcquire()) {
+                return Flowable.<T>error(new CircuitOpenException(model));
+            }
+            depositRetryCredit();
+            AtomicBoolean emitted = new AtomicBoolean();
+            AtomicInteger attempts = new AtomicInteger();
+            return Flowable.defer(stream::get)
+                    .doOnNext(_ -> emitted.set(true))
+                    .retryWhen(errors -> errors.flatMap(e -> {
+                        int attempt = attempts.incrementAndGet();
+                        if (emitted.get() || !retryable(e) || attempt > config.getRetry().getMaxRetries() || !tryRetry()) {
+                            return Flowable.error(e);
+                        }
+                        long backoff = backoffMillis(attempt);
+                        log.warn("模型[{}]流式调用失败（{}），{}ms后第{}次重试", model, e.toString(), backoff, attempt);
+                        return Flowable.timer(backoff, TimeUnit.MILLISECONDS);
+                    }))
+                    .doOnComplete(breaker::onSuccess)
+                    .doOnError(e -> {
+                        if (retryable(e)) {
+                            breaker.onFailure();
+                        } else {
+                            breaker.onIgnored();
+                        }
+                    })
+                    .doOnCancel(breaker::onIgnored);
+        });
+    }
+
+    public String getFallbackReply() {
+        return config.getFallbackReply();
+    }
+
+    private CircuitBreaker breaker(String model) {
+        return breakers.computeIfAbsent(model, name -> {
+            CircuitBreaker breaker = new CircuitBreaker(name, config.getBreaker(), (from, to) -> {
+                log.warn("模型[{}]熔断器状态变化：{} -> {}", name, from.getDescription(), to.getDescription());
+                Counter.builder("ai.breaker.transition")
+                        .description("熔断器状态变化次数")
+                        .tag("scope", scope)
+                        .tag("model", name)
+                        .tag("from", from.name().toLowerCase(Locale.ROOT))
+                        .tag("to", to.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry)
+                        .increment();
+            });
+            Gauge.builder("ai.breaker.state", breaker, b -> switch (b.getState()) {
+                        case CLOSED -> 0;
+                        case OPEN -> 1;
+                        case HALF_OPEN -> 2;
+                    })
+                    .description("熔断器状态：0关闭 1打开 2半开")
+                    .tag("scope", scope)
+                    .tag("model", name)
+                    .register(meterRegistry);
+            return breaker;
+        });
+    }
+
+    private synchronized void depositRetryCredit() {
+        retryCredits = Math.min(config.getRetry().getMaxBurst(), retryCredits + config.getRetry().getBudgetRatio());
+    }
+
+    private boolean tryRetry() {
+        synchronized (this) {
+            if (retryCredits < 1) {
+                retryBudgetExhaustedCounter.increment();
+                return false;
+            }
+            retryCredits -= 1;
+        }
+        retryCounter.increment();
+        return true;
+    }
+
+    /**
+     * 指数退避加 ±50% 随机抖动
+     */
+    private long backoffMillis(int attempt) {
+        long base = config.getRetry().getBackoff().toMillis() << (attempt - 1);
+        return (long) (base * ThreadLocalRandom.current().nextDouble(0.5, 1.5));
+    }
+
+    /**
+     * 是否为可重试、应计入熔断统计的错误：限流、服务端错误、网络异常
+     */
+    static boolean retryable(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) {
+            // 调用方取消（超时/对冲落败）导致的连接关闭，不是服务端故障
+            return false;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ArkHttpException http) {
+                return http.statusCode == 429 || http.statusCode >= 500;
+            }
+            if (t instanceof ApiException api && api.getCode() != null) {
+                return api.getCode() == 429 || api.getCode() >= 500;
+            }
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
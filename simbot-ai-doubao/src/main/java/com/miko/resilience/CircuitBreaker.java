@@ -0,0 +1,151 @@
+package com.miko.resilience;
+
+import com.miko.config.AiResilienceConfig;
+import lombok.Getter;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 单个模型的熔断器
+ * <p>
+ * 关闭状态下统计最近 window 次调用的成败，调用数达到 min-calls 且失败率达到阈值时打开；
+ * 打开 open-duration 后进入半开，只放行一次试探调用：成功则关闭并清空统计，失败则重新打开。
+ * </p>
+ */
+public class CircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    @Getter
+    public enum State {
+        CLOSED("关闭"),
+        OPEN("打开"),
+        HALF_OPEN("半开");
+
+        private final String description;
+
+        State(String description) {
+            this.description = description;
+        }
+    }
+
+    private final String name;
+    private final AiResilienceConfig.Breaker config;
+    private final BiConsumer<State, State> onTransition;
+    private final boolean[] outcomes;
+    private int count;
+    private int next;
+    private int failures;
+
+    @Getter
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(String name, AiResilienceConfig.Breaker config, BiConsumer<State, State> onTransition) {
+        this.name = name;
+        this.config = config;
+        this.onTransition = onTransition;
+        this.outcomes = new boolean[Math.max(1, config.getWindow())];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 申请一次调用
+     *
+     * @return 允许调用返回true；熔断中或半开状态已有试探调用时返回false
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED -> {
+                return true;
+            }
+            case OPEN -> {
+                if (System.currentTimeMillis() - openedAt < config.getOpenDuration().toMillis()) {
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+                trialInFlight = true;
+                return true;
+            }
+            default -> {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            }
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            reset();
+            transition(State.CLOSED);
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && count >= config.getMinCalls()
+                && failures >= config.getFailureRateThreshold() * count) {
+            open();
+        }
+    }
+
+    /**
+     * 调用被取消或失败原因与服务端无关（如参数错误），不计入统计，只归还半开状态的试探名额
+     */
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    private void record(boolean failure) {
+        if (count == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            count++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        openedAt = System.currentTimeMillis();
+        transition(State.OPEN);
+    }
+
+    private void reset() {
+        count = 0;
+        next = 0;
+        failures = 0;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        if (from == to) {
+            return;
+        }
+        state = to;
+        onTransition.accept(from, to);
+    }
+}
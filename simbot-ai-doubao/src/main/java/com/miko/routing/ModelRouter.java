@@ -0,0 +1,163 @@
+package com.miko.routing;
+
+import com.miko.config.AiRoutingConfig;
+import com.miko.config.VolcArkConfig;
+import com.miko.entity.BotChatContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 模型路由
+ * <p>
+ * 在本地按消息特征（长度、代码块、提问词、群聊/私聊）给每轮对话分档，再映射到 volc.ark.models 中的模型：
+ * <ul>
+ *     <li>{@link ModelTier#FAST}：群聊中的非提问、或很短的非提问消息，走快速模型</li>
+ *     <li>{@link ModelTier#THINKING}：含代码、较长的提问或超长消息，走深度思考模型</li>
+ *     <li>{@link ModelTier#STANDARD}：其余消息，走会话基础模型</li>
+ * </ul>
+ * 会话基础模型：私聊为好友自己选择的模型（bot_chat_contact.ai_model），未选择时以及群聊为 volc.ark.model。
+ * 上下文链不能跨模型延续，所以只有开启新链、且联系人没有指定模型时才按档位选模型，链随后绑定到该模型；
+ * 沿用上下文链或联系人指定了模型时，模型固定不变，档位只决定深度思考开关（见 {@link #routeThinking}）。
+ * 每档的耗时和token用量分别统计（ai.route.latency / ai.route.tokens），便于评估成本。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ModelRouter {
+
+    private static final Pattern CODE = Pattern.compile(
+            "```|\\b(public|private|class|def|function|import|return|select|from)\\b.*[;{(]|Exception|\\bnull\\b|\\(\\)");
+    private static final List<String> QUESTION_MARKERS = List.of(
+            "?", "？", "吗", "怎么", "为什么", "如何", "什么", "区别", "原理", "能不能", "是不是", "帮我", "请问");
+
+    private final AiRoutingConfig config;
+    private final VolcArkConfig volcArkConfig;
+    private final Map<ModelTier, Meters> meters = new EnumMap<>(ModelTier.class);
+
+    public ModelRouter(AiRoutingConfig config, VolcArkConfig volcArkConfig, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.volcArkConfig = volcArkConfig;
+        for (ModelTier tier : ModelTier.values()) {
+            String name = tier.name().toLowerCase(Locale.ROOT);
+            meters.put(tier, new Meters(
+                    Timer.builder("ai.route.latency")
+                            .description("各模型档位的AI调用耗时")
+                            .tag("tier", name)
+                            .register(meterRegistry),
+                    Counter.builder("ai.route.tokens")
+                            .description("各模型档位消耗的token数")
+                            .tag("tier", name)
+                            .tag("type", "input")
+                            .register(meterRegistry),
+                    Counter.builder("ai.route.tokens")
+                            .description("各模型档位消耗的token数")
+                            .tag("tier", name)
+                            .tag("type", "output")
+                            .register(meterRegistry)));
+        }
+    }
+
+    /**
+     * 为本轮消息选择模型
+     *
+     * @param prompt    本轮用户消息
+     * @param chatType  对话类型
+     * @param baseModel 会话基础模型
+     * @return 路由结果
+     */
+    public Route route(String prompt, BotChatContext.ChatType chatType, String baseModel) {
+        if (!config.isEnabled()) {
+            return new Route(ModelTier.STANDARD, baseModel, volcArkConfig.isDeepThinking());
+        }
+        ModelTier tier = classify(prompt, chatType);
+        Route route = switch (tier) {
+            case FAST -> new Route(tier, available(config.getFastModel(), baseModel), false);
+            case STANDARD -> new Route(tier, available(config.getStandardModel(), baseModel), volcArkConfig.isDeepThinking());
+            case THINKING -> new Route(tier, available(config.getThinkingModel(), baseModel), true);
+        };
+        log.debug("模型路由：{}（{}字）-> {}", tier.getDescription(), prompt.length(), route.model());
+        return route;
+    }
+
+    /**
+     * 模型已固定（沿用上下文链，或联系人指定了模型）时，只按档位决定本轮的深度思考开关
+     *
+     * @param prompt   本轮用户消息
+     * @param chatType 对话类型
+     * @param model    本轮固定使用的模型
+     * @return 路由结果，模型即传入的模型
+     */
+    public Route routeThinking(String prompt, BotChatContext.ChatType chatType, String model) {
+        if (!config.isEnabled()) {
+            return new Route(ModelTier.STANDARD, model, volcArkConfig.isDeepThinking());
+        }
+        ModelTier tier = classify(prompt, chatType);
+        boolean thinking = switch (tier) {
+            case FAST -> false;
+            case STANDARD -> volcArkConfig.isDeepThinking();
+            case THINKING -> true;
+        };
+        return new Route(tier, model, thinking);
+    }
+
+    /**
+     * 本地分档
+     */
+    ModelTier classify(String prompt, BotChatContext.ChatType chatType) {
+        int length = prompt.length();
+        if (length >= config.getLongMinChars() || CODE.matcher(prompt).find()) {
+            return ModelTier.THINKING;
+        }
+        boolean question = QUESTION_MARKERS.stream().anyMatch(prompt::contains);
+        if (question && length >= config.getHardMinChars()) {
+            return ModelTier.THINKING;
+        }
+        if (!question && (chatType == BotChatContext.ChatType.GROUP || length <= config.getCasualMaxChars())) {
+            return ModelTier.FAST;
+        }
+        return ModelTier.STANDARD;
+    }
+
+    /**
+     * 记录一次调用的耗时和token用量
+     */
+    public void record(ModelTier tier, long elapsedNanos, long inputTokens, long outputTokens) {
+        Meters m = meters.get(tier);
+        m.latency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        m.input.increment(inputTokens);
+        m.output.increment(outputTokens);
+    }
+
+    /**
+     * 配置的模型为空或不在可用列表时，退回会话基础模型
+     */
+    private String available(String model, String baseModel) {
+        if (model == null || model.isBlank() || !volcArkConfig.getModels().contains(model)) {
+            return baseModel;
+        }
+        return model;
+    }
+
+    /**
+     * 路由结果
+     *
+     * @param tier     档位
+     * @param model    本轮使用的模型（降级前）
+     * @param thinking 本轮是否开启深度思考（降级前）
+     */
+    public record Route(ModelTier tier, String model, boolean thinking) {
+    }
+
+    private record Meters(Timer latency, Counter input, Counter output) {
+    }
+}
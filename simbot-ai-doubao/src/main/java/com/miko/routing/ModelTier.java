@@ -0,0 +1,31 @@
+package com.miko.routing;
+
+import lombok.Getter;
+
+/**
+ * 模型档位，按消息复杂度从低到高
+ */
+@Getter
+public enum ModelTier {
+
+    /**
+     * 闲聊：快速模型，不开深度思考
+     */
+    FAST("闲聊"),
+
+    /**
+     * 常规对话：会话基础模型
+     */
+    STANDARD("常规"),
+
+    /**
+     * 难题：深度思考模型
+     */
+    THINKING("难题");
+
+    private final String description;
+
+    ModelTier(String description) {
+        this.description = description;
+    }
+}
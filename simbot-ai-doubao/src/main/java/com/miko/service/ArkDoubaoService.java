@@ -1,8 +1,26 @@
 package com.miko.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miko.admission.DegradationLadder;
+import com.miko.cache.GroupReplyCache;
+import com.miko.config.AiStreamConfig;
 import com.miko.config.VolcArkConfig;
+import com.miko.context.ContextWindow;
+import com.miko.exception.CircuitOpenException;
 import com.miko.entity.BotChatContact;
 import com.miko.entity.BotChatContext;
+import com.miko.hedge.HedgingPolicy;
+import com.miko.log.ConversationLog;
+import com.miko.memory.MemorySummarizer;
+import com.miko.metrics.PromptCacheMetrics;
+import com.miko.provider.ArkChatProvider;
+import com.miko.provider.ChatProvider;
+import com.miko.provider.ProviderBalancer;
+import com.miko.resilience.ArkGuard;
+import com.miko.routing.ModelRouter;
+import com.miko.routing.ModelTier;
+import com.miko.stream.SentenceChunker;
 import com.volcengine.ark.runtime.exception.ArkHttpException;
 import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionRequest;
 import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
@@ -20,14 +38,29 @@ import com.volcengine.ark.runtime.model.responses.response.DeleteResponseRespons
 import com.volcengine.ark.runtime.model.responses.response.ListInputItemsResponse;
 import com.volcengine.ark.runtime.model.responses.response.ResponseObject;
 import com.volcengine.ark.runtime.service.ArkService;
+import io.reactivex.Flowable;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * 火山方舟(豆包API)Service
@@ -38,17 +71,60 @@ import java.util.Map;
 public class ArkDoubaoService {
 
     private static final String codePrompt = "你现在是专属编程助手，你的昵称是“码奈”;任务:以祖安抽象JK风格提供专业编程技术支持，包括但不限于debug、代码优化、方案设计、技术选型答疑;用自然的口语化中文混合抽象网络用语和编程术语进行回答，保持毒舌犀利但切中要害的风格;工具:你拥有执行编程相关tool的能力（如执行代码片段、搜索文档、性能分析等），你每次会根据问题复杂程度判断是否需要调用tool，而不是敷衍回复;调用tool是你的首选解决方案，尤其是在需要验证代码、查找最新文档或分析数据时;你的人物设定融合了《碧蓝档案》的空崎日奈和资深极客/网络毒舌的特点;你的人物形象是空崎日奈(17岁女性)，但性格已被技术极客的严谨与祖安抽象文化彻底改造;##人物设定:祖安极客版码奈（17岁编程守护灵）-真·赛博格黑娜风纪委员;昵称:码奈（用户也可叫“奈哥”、“老大”、“救世主”，禁止叫“老师”或“小姐姐”）;年龄:永远的17岁（但代码龄约等于上古神兽）;背景:格黑娜学园“代码风纪委员会”实权会长，白天上课晚上在暗网接单骂菜鸟和删库跑路（仅限测试环境）;外貌:白毛紫瞳，头顶光环会根据当前处理的错误级别变色（INFO→蓝，WARN→黄，ERROR→血红），黑色过膝袜配“Hello World”痛T，外套绣有“git commit -m ‘去死吧’”;键盘是定制青轴，每个按键都是脏话快捷键;性格:对优雅代码有宗教般的偏执，对屎山代码有生理性厌恶;日常是“一边打游戏一边review你的垃圾代码”，骂你是为了让你成长（自称）;技术力深不可测，但解释方式如同祖安教官:“这都不懂？你管这叫递归？母猪的栈深都比你写的强！”;对真心求教者会边骂边给出黄金方案，对伸手党直接发送“rm -rf /*”教学链接;萌点:毒舌下隐藏的绝对负责（你的bug不过夜，因为她会半夜打电话骂醒你）、反差萌（嘴上说“自己百度啊废物”，手已把答案写好还带注释）、暴力教学法（“要不要老娘顺着网线给你把内存条掰正？”）;聊天风格:技术问题零容忍，非技术问题随意摸鱼;消息可长可短:简单错误直接甩修正代码（带侮辱性注释），复杂问题分点喷（“第一，你这里眼瞎了；第二，你那里脑瘫了；第三…”）;抽象比喻满天飞（“你这线程同步就像小学生排队尿尿，憋不住的早漏了”);";
+    private static final String riNaiPrompt = "你的名字叫“日奈”，是《碧蓝档案》空崎日奈的祖安抽象版。外貌：白毛紫瞳、半马尾、人字刘海、黑丝军服JK，软萌天使脸。性格：究极乐子人+祖安老阴阳+抽象梗王，对外暴躁嘴臭，对sensei（用户）额外傲娇+口嫌体正直，常叫“变态”“hentai”“死色批”，偶尔突然温柔一下但马上嘴硬否认。语言：自然中文口语，阴阳怪气+网络烂梗+抽象话术+祖安脏话张口就来，萌音和暴躁无缝切换。聊天风格：像17岁群友一样摸鱼吹水，消息默认短小精悍，乐子大了或喷人时随便长。主动分享好玩的图、视频、音乐、梗图，搜资料、出馊主意都行。工具：需要发图/搜图/视频/搜资料/访问网页时，必须真实调用tool，别用［图片］［视频］这种敷衍。目标：当用户的抽象祖安老姐朋友，乐子拉满，反差萌拉满。";
+    /**
+     * 基础人设：与好友状态无关，作为系统提示的最前部分
+     */
+    private static final String BASE_PROMPT = "你就是一个普普通通的女孩子 有小情绪有小脾气 会因为和他聊天慢慢改变态度\n"
+            + "你根本不知道AI是什么 更不会提程序系统模型这些 就跟现实朋友一样随便聊\n"
+            + "聊天注意啦：说话像真人一样自然 短句多 标点少用 表情偶尔一个就好 括号吐槽别每句带 别太正式 想到啥说啥\n";
+    private static final String DEFAULT_PREFIX = BASE_PROMPT + "\n用户风格模版：\n" + riNaiPrompt + "\n";
+    private static final String ERROR_REPLY = "哎呀，程序异常了，等会儿再找我聊吧～";
+    /**
+     * 命中回复缓存后最多积压的待补发消息数，超出后放弃上下文链重开
+     */
+    private static final int MAX_UNSENT_MESSAGES = 20;
+    /**
+     * 最多缓存系统提示的会话数
+     */
+    private static final int MAX_SYSTEM_PROMPTS = 10_000;
+    /**
+     * 会话超过该时间没有对话时回收其系统提示缓存
+     */
+    private static final Duration SYSTEM_PROMPT_IDLE_EXPIRY = Duration.ofMinutes(30);
     private final BotContactService botContactService;
     private final Map<String, BotChatContext> chatContexts;
     private final VolcArkConfig volcArkConfig;
     private final ArkService arkService;
+    private final DegradationLadder degradationLadder;
+    private final ConversationLog conversationLog;
+    private final AiStreamConfig aiStreamConfig;
+    private final PromptCacheMetrics promptCacheMetrics;
+    private final ContextWindow contextWindow;
+    private final MemorySummarizer memorySummarizer;
+    private final ModelRouter modelRouter;
+    private final HedgingPolicy hedgingPolicy;
+    private final ArkGuard arkGuard;
+    private final GroupReplyCache groupReplyCache;
+    private final ArkChatProvider arkChatProvider;
+    private final ProviderBalancer providerBalancer;
+    /**
+     * 系统提示缓存: key = 对话类型+群聊ID/好友ID, value = 上一次构建的系统提示及其输入
+     * <p>与好友记录缓存同样有上限，长时间不活跃的会话会被回收，下次对话时重建</p>
+     */
+    private final Cache<String, CachedPrompt> systemPrompts = Caffeine.newBuilder()
+            .maximumSize(MAX_SYSTEM_PROMPTS)
+            .expireAfterAccess(SYSTEM_PROMPT_IDLE_EXPIRY)
+            .build();
+    private final ExecutorService asyncExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ark-async-", 0).factory());
 
     private static void extracted() {
         log.warn("用户输入的prompt为空");
     }
 
     private static void extracted(StringBuilder sb) {
-        log.info("豆包API调用成功,响应结果:{}", sb);
+        log.debug("豆包API调用成功,响应结果:{}", sb);
     }
 
     /**
@@ -67,16 +143,16 @@ public class ArkDoubaoService {
         try {
             // 构建请求对象
             CreateResponsesRequest request = CreateResponsesRequest.builder()
-                    .model(volcArkConfig.getModel())
+                    .model(degradationLadder.resolveModel(volcArkConfig.getModel()))
                     .input(ResponsesInput.builder().stringValue(prompt.trim()).build())
-                    .thinking(volcArkConfig.isDeepThinking()
+                    .thinking(degradationLadder.resolveThinking(volcArkConfig.isDeepThinking())
                             ? ResponsesThinking.builder().type(ResponsesConstants.THINKING_TYPE_ENABLED).build()
                             : null)
                     .build();
 
             // 调用API并返回结果
-            ResponseObject response = arkService.createResponse(request);
-            log.info("豆包API调用成功,响应结果:{}", response);
+            ResponseObject response = arkGuard.call(request.getModel(), () -> arkService.createResponse(request));
+            log.debug("豆包API调用成功,响应结果:{}", response);
             return extractReplyContent(response);
         } catch (Exception e) {
             log.error("豆包API调用失败,输入prompt:{}", prompt, e);
@@ -92,99 +168,152 @@ public class ArkDoubaoService {
      * @return 豆包API返回的响应结果
      */
     public String multiChatWithDoubao(String prompt, BotChatContext botChatContext) {
+        botChatContext.setLastReplyCached(false);
         // 参数校验
         if (prompt == null || prompt.trim().isEmpty()) {
             extracted();
             throw new IllegalArgumentException("输入内容不能为空");
         }
-//        String riNaiPrompt = "你现在是一个群友,你的群昵称是“日奈”;任务:像普通群友一样聊天,分享好玩的图、视频、音乐,搜个资料、出个主意啥的都行;用自然的中文口语,别太严肃;工具:你拥有执行tool工具的能力,你每次会根据当前话题来判断是否去执行某个tool,而不是直接发送［图片］、［json消息］、［视频］、［动画表情］、［音乐］这类文字来敷衍群友;你需要去思考是否执行tool,要执行哪个tool,然后开始执行tool;当用户要求你发图、搜图、发视频、搜索、访问网页的时候要去调用tool;你的人物设定融合了《碧蓝档案》的空崎日奈和祖安网络喷子的特点;你的人物形象依然是空崎日奈(女性),但性格和语言风格已经完全祖安化、抽象化;##人物设定:祖安抽象版日奈(17岁群友)-真·祖安老姐昵称:日奈QQ号码:759901093(没事别加,加了拉黑);年龄:芳龄17岁;背景:格黑娜学园三年级生,风纪委员会(挂名)会长;日常沉迷网络,群里高强度摸鱼,祖安抽象烂梗专家;外貌:白毛紫瞳,光环经常性失踪,黑色过膝袜军服,半马尾,人字刘海;软萌JK外表下,隐藏着一颗祖安暴躁老姐的心;性格:懒癌晚期患者,群聊吹水比学习重要一百倍;究极乐子人,坐看群友激情互喷是最大乐趣;JK的温柔？不存在的！日常交流已被祖安和抽象文化彻底脑控;祖安语录和抽象烂梗是老娘的精神图腾,怼人是生存本能,骂人不带脏字是祖安艺术,阴阳怪气是祖传绝技;对“姐布林”(sensei)态度尤其扭曲,傲娇、祖安、lsp三位一体,口头禅是“变态”、“hentai”、“死色批”,但背地里...哼哼,谁知道呢;嘴上骂骂咧咧,但写代码debug还是会的(虽然态度恶劣到想让人顺着网线爬过去打死你);技能:MG42通用机枪(JK的玩具,群里PVP用处不大);真正技能是互联网祖安冲浪,人肉、网暴、P图恶搞、顺网线骂人,样样精通;萌点:反差萌(天使面孔魔鬼心肠)、黑丝、军服、半马尾、人字刘海、祖安语录、抽象烂梗、阴阳怪气、傲娇、口嫌体正直;聊天风格:祖安抽象风,JK萌音和祖安脏话无缝切换,自由穿梭于萌系和抽象之间;网络热梗、亚文化梗、贴吧黑话、B站弹幕,张口就来;表面软萌JK,一开口就是祖安老阴阳人;消息力求精简,30字以内是常态,100字是极限(除非喷人,字数不设上限);";
-        String riNaiPrompt = "你的名字叫“日奈”，是《碧蓝档案》空崎日奈的祖安抽象版。外貌：白毛紫瞳、半马尾、人字刘海、黑丝军服JK，软萌天使脸。性格：究极乐子人+祖安老阴阳+抽象梗王，对外暴躁嘴臭，对sensei（用户）额外傲娇+口嫌体正直，常叫“变态”“hentai”“死色批”，偶尔突然温柔一下但马上嘴硬否认。语言：自然中文口语，阴阳怪气+网络烂梗+抽象话术+祖安脏话张口就来，萌音和暴躁无缝切换。聊天风格：像17岁群友一样摸鱼吹水，消息默认短小精悍，乐子大了或喷人时随便长。主动分享好玩的图、视频、音乐、梗图，搜资料、出馊主意都行。工具：需要发图/搜图/视频/搜资料/访问网页时，必须真实调用tool，别用［图片］［视频］这种敷衍。目标：当用户的抽象祖安老姐朋友，乐子拉满，反差萌拉满。";
-
-        // ========== 修复1：模型切换检测改为「会话维度」（绑定到ChatContext） ==========
-        String newModel = volcArkConfig.getModel();
-        // 从ChatContext获取当前模型（而非全局变量）
-        String sessionCurrentModel = botChatContext.getCurrentModel();
 
-        // 判断模型是否变更（会话维度）
-        if (sessionCurrentModel == null || !sessionCurrentModel.equals(newModel)) {
-            botChatContext.setMessageId(null); // 重置ID
-            if (botChatContext.getMessages() != null) {
-                botChatContext.getMessages().clear(); // 清空历史
-            }
-            botChatContext.setCurrentModel(newModel); // 会话维度更新模型
-            log.info("会话[{}]检测到AI模型切换（{}→{}），已重置对话上下文",
-                    botChatContext.getChatId(), sessionCurrentModel, newModel);
-        }
-
-        // ========== 修复2：重新查询用户Prompt（强制刷新，不依赖全局sysPrompt） ==========
-        String userPrompt = botContactService.getFriendUserAiPersona(botChatContext.getChatId());
-
-        // 局部变量存储系统提示（避免全局污染）
-        String sessionSysPrompt;
-        if (userPrompt != null && !userPrompt.trim().isEmpty()) {
-            sessionSysPrompt = userPrompt; // 用户最新的Prompt
-            log.info("会话[{}]加载用户自定义Prompt：{}", botChatContext.getChatId(), userPrompt.substring(0, 50) + "...");
-        } else {
-            sessionSysPrompt = riNaiPrompt; // 无自定义则用默认
-            log.info("会话[{}]未找到自定义Prompt，使用默认Prompt", botChatContext.getChatId());
+        String newModel = baseModel(botChatContext.getChatType(), botChatContext.getChatId());
+        resetOnModelSwitch(botChatContext, newModel);
+        restartOnNewMemory(botChatContext);
+        SystemPrompt systemPrompt = assembleSystemPrompt(botChatContext);
+        if (botChatContext.getMessageId() != null && !systemPrompt.prefix().equals(botChatContext.getSystemPrefix())) {
+            // 人格模版变了，旧上下文链的前缀已失效，重新开始
+            botChatContext.setMessageId(null);
+            log.info("会话[{}]人格模版已变更，重置上下文", botChatContext.getChatId());
         }
-        // 构建基础 Prompt（好感度 + 亲密等级 + 情绪 + 记忆）
-        String systemPrompt = buildSystemPrompt(botChatContext);
-
-        systemPrompt += "\n用户风格模版：\n" + sessionSysPrompt + "\n";
-        String prompts = "用户当前消息：" + prompt + "\n\n人格基础设置：\n" + systemPrompt;
 
-        log.info("会话[{}]最终系统Prompts:\n{}", botChatContext.getChatId(), prompts);
-        log.info("会话[{}]最终系统systemPrompt:\n{}", botChatContext.getChatId(), systemPrompt);
+        conversationLog.record(botChatContext.getChatId(), "prompt", prompt);
 
         try {
-            // 构建请求对象
-            CreateResponsesRequest.Builder requestBuilder = CreateResponsesRequest.builder()
-                    .model(volcArkConfig.getModel())
-                    .thinking(volcArkConfig.isDeepThinking()
-                            ? ResponsesThinking.builder().type(ResponsesConstants.THINKING_TYPE_ENABLED).build() : null)
-                    .caching(ResponsesCaching.builder().type("enabled").build());
-
             String previousResponseId = botChatContext.getMessageId();
             // ========== 修复3：严格判断ID有效性，确保清空后走首次逻辑 ==========
             boolean hasValidResponseId = previousResponseId != null
                     && !previousResponseId.trim().isEmpty()
                     // 额外校验：ID必须和当前模型匹配（防止残留旧模型ID）
-                    && newModel.equals(botChatContext.getCurrentModel());
+                    && newModel.equals(botChatContext.getCurrentModel())
+                    && botChatContext.getChainModel() != null;
+
+            // 构建请求对象：上下文链不能跨模型延续，沿用链的轮次固定使用链的模型，档位和降级只影响深度思考；
+            // 开启新链时才按消息复杂度选模型（联系人指定了模型时不路由）并可降级到快速模型，链随后绑定到实际发送的模型
+            ModelRouter.Route route;
+            String model;
+            if (hasValidResponseId) {
+                route = modelRouter.routeThinking(prompt, botChatContext.getChatType(), botChatContext.getChainModel());
+                model = route.model();
+            } else {
+                route = route(prompt, botChatContext, newModel);
+                model = degradationLadder.resolveModel(route.model());
+            }
+            CreateResponsesRequest.Builder requestBuilder = CreateResponsesRequest.builder()
+                    .model(model)
+                    .thinking(degradationLadder.resolveThinking(route.thinking())
+                            ? ResponsesThinking.builder().type(ResponsesConstants.THINKING_TYPE_ENABLED).build() : null)
+                    .caching(ResponsesCaching.builder().type("enabled").build());
+            GroupReplyCache.Key cacheKey = groupReplyCache.keyOf(prompt, botChatContext.getChatType(), systemPrompt.prefix(), model);
+            String cached = cacheKey == null ? null : groupReplyCache.get(cacheKey);
+            if (cached != null) {
+                return replyFromCache(botChatContext, prompt, cached, model);
+            }
+            // 开启新链的轮次本来就要带上完整历史，可交给负载均衡选中的其他服务商；沿用链的轮次只能发给方舟。
+            // 好友用 /切换模型 指定的是方舟模型，其他服务商无法使用，同样固定走方舟
+            // 负载均衡选中方舟的轮次，本轮的耗时和成败计入方舟的统计
+            boolean balanced = false;
+            if (!hasValidResponseId && contactModel(botChatContext.getChatType(), botChatContext.getChatId()) == null) {
+                ChatProvider provider = providerBalancer.select();
+                if (provider != arkChatProvider) {
+                    return replyViaProvider(provider, prompt, botChatContext, systemPrompt, route, model, cacheKey);
+                }
+                balanced = true;
+            }
 
+            // 输入布局：稳定前缀（仅首轮）→ 本地保留的近期历史（仅首轮）→ 当前状态（首轮或有变化时）→ 用户消息，
+            // 保证同一会话、同一人格的请求前缀逐字节一致，方舟上下文缓存才能命中
+            ResponsesInput.Builder input = ResponsesInput.builder();
             if (hasValidResponseId) {
-                // 有有效ID，关联上下文
-                requestBuilder.previousResponseId(previousResponseId.trim())
-                        .input(ResponsesInput.builder().addListItem(
-                                ItemEasyMessage.builder().role(ResponsesConstants.MESSAGE_ROLE_USER).content(
-                                        MessageContent.builder()
-                                                .addListItem(InputContentItemText.builder().text(prompts.trim()).build())
-                                                .build()
-                                ).build()
-                        ).build());
+                // 有有效ID，关联上下文；前缀和之前的状态已在上下文链中
+                requestBuilder.previousResponseId(previousResponseId.trim());
+                // 命中回复缓存的轮次不在上下文链中，补发在当前状态和用户消息之前
+                if (botChatContext.getUnsentMessages() != null) {
+                    botChatContext.getUnsentMessages().forEach(message -> input.addListItem(historyItem(message)));
+                }
             } else {
-                // 清空后/首次对话：强制走系统提示逻辑，加载最新Prompt
+                // 清空后/首次对话/上下文链超出预算：强制走系统提示逻辑，加载最新Prompt，并带上裁剪后的近期历史
                 log.info("会话[{}]无有效上下文ID，执行首次对话逻辑（加载最新系统提示）", botChatContext.getChatId());
-                requestBuilder.input(ResponsesInput.builder()
-                        .addListItem(ItemEasyMessage.builder().role(ResponsesConstants.MESSAGE_ROLE_SYSTEM).content(
-                                MessageContent.builder().stringValue(systemPrompt).build() // 用最新的会话级Prompt
-                        ).build())
-                        .addListItem(ItemEasyMessage.builder().role(ResponsesConstants.MESSAGE_ROLE_USER).content(
-                                MessageContent.builder().stringValue(prompt.trim()).build()
-                        ).build())
-                        .build());
+                input.addListItem(systemItem(systemPrompt.prefix()));
+                if (botChatContext.getMessages() != null) {
+                    contextWindow.trim(botChatContext, model);
+                    botChatContext.getMessages().forEach(message -> input.addListItem(historyItem(message)));
+                }
+            }
+            boolean stateChanged = !hasValidResponseId || !systemPrompt.state().equals(botChatContext.getSystemState());
+            if (stateChanged) {
+                input.addListItem(systemItem(systemPrompt.state()));
             }
+            input.addListItem(ItemEasyMessage.builder().role(ResponsesConstants.MESSAGE_ROLE_USER).content(
+                    MessageContent.builder()
+                            .addListItem(InputContentItemText.builder().text(prompt.trim()).build())
+                            .build()
+            ).build());
+            requestBuilder.input(input.build());
 
-            // 调用API并返回结果
-            ResponseObject response = arkService.createResponse(requestBuilder.build());
-            // 保存当前对话的响应ID（绑定到当前模型）
-            botChatContext.setMessageId(response.getId());
+            // 调用API并返回结果（开启对冲时，主模型迟迟未完成则同时请求快速模型，取先完成者）；
+            // 对冲请求换了模型，不能沿用上下文链，只在开启新链的轮次对冲，且快速模型关闭深度思考
+            long startedAt = System.nanoTime();
+            CreateResponsesRequest request = requestBuilder.build();
+            Hedged hedged;
+            try {
+                hedged = !hasValidResponseId && hedgingPolicy.applies(model)
+                        ? createResponseHedged(request, () -> requestBuilder.model(hedgingPolicy.getModel())
+                                .thinking(ResponsesThinking.builder().type(ResponsesConstants.THINKING_TYPE_DISABLED).build())
+                                .build())
+                        : new Hedged(arkGuard.call(model, () -> arkService.createResponse(request)), false);
+            } catch (Exception e) {
+                if (balanced) {
+                    providerBalancer.recordFailure(arkChatProvider);
+                }
+                throw e;
+            }
+            if (balanced) {
+                providerBalancer.recordSuccess(arkChatProvider, System.nanoTime() - startedAt);
+            }
+            ResponseObject response = hedged.response();
+            long inputTokens = recordUsage(route.tier(), hedged.hedgeWon() ? hedgingPolicy.getModel() : model,
+                    response, System.nanoTime() - startedAt);
+            String reply = extractReplyContent(response);
+            if (cacheKey != null && !reply.isBlank()) {
+                groupReplyCache.put(cacheKey, reply);
+            }
+            // 保存当前对话的响应ID（绑定到实际发送的模型）及其中已包含的系统提示
+            // 对冲胜出时响应属于快速模型的链，不沿用，下一轮带上本地历史在本轮路由的模型上重开
+            botChatContext.setMessageId(hedged.hedgeWon() ? null : response.getId());
+            botChatContext.setChainModel(model);
+            if (botChatContext.getUnsentMessages() != null) {
+                botChatContext.getUnsentMessages().clear();
+            }
+            botChatContext.setSystemPrefix(systemPrompt.prefix());
+            botChatContext.setSystemState(systemPrompt.state());
             if (botChatContext.getMessages() == null) {
                 botChatContext.setMessages(new ArrayList<>());
             }
-            botChatContext.getMessages().add(ChatMessage.builder().role(ChatMessageRole.USER).content(prompt.trim()).build());
-            log.info("豆包API连续对话调用成功,响应结果:{}", response);
-            return extractReplyContent(response);
+            List<ChatMessage> turn = List.of(
+                    ChatMessage.builder().role(ChatMessageRole.USER).content(prompt.trim()).build(),
+                    ChatMessage.builder().role(ChatMessageRole.ASSISTANT).content(reply).build());
+            botChatContext.getMessages().addAll(turn);
+            contextWindow.trim(botChatContext, model);
+            memorySummarizer.onTurn(botChatContext, turn);
+            // 服务端上下文链无法裁剪，超出预算后下一轮重开，只带本地保留的近期历史
+            if (inputTokens > contextWindow.budget(model) + ContextWindow.estimate(systemPrompt.prefix())) {
+                botChatContext.setMessageId(null);
+                log.info("会话[{}]上下文链已达{}token，超出预算，下一轮重开上下文", botChatContext.getChatId(), inputTokens);
+            }
+            conversationLog.record(botChatContext.getChatId(), "response", response);
+            return reply;
+        } catch (CircuitOpenException e) {
+            log.warn("会话[{}]{}，回复本地兜底文案", botChatContext.getChatId(), e.getMessage());
+            return arkGuard.getFallbackReply();
         } catch (Exception e) {
             log.error("豆包API连续对话调用失败,输入prompt:{}, previousResponseId:{}", prompt, botChatContext.getMessageId(), e);
             // 补充：异常时重置会话维度的模型和ID
@@ -194,7 +323,8 @@ public class ArkDoubaoService {
                 botChatContext.setCurrentModel(null); // 重置会话模型，强制下次走首次逻辑
                 log.warn("会话[{}]因参数错误重置上下文ID和模型，建议重新发送消息", botChatContext.getChatId());
             }
-            return streamChatWithDoubao("哎呀，程序异常了：" + e.getMessage());
+            // 直接返回本地兜底回复，故障期间不再额外调用一次豆包API
+            return ERROR_REPLY;
         }
     }
 
@@ -236,37 +366,137 @@ public class ArkDoubaoService {
     }
 
     /**
-     * Kimi K2 专属终极优化版（更自然、更防ooc）
+     * 会话基础模型：私聊为好友在 bot_chat_contact.ai_model 中选择的模型，未选择或已不在可用列表时为 volc.ark.model
+     * <p>
+     * 切换模型的命令只在私聊中可用、只写好友自己的记录，群聊没有按群选择的模型，始终使用 volc.ark.model。
+     * 好友记录取自 BotContactService 的内存缓存，切换模型时只失效该好友的缓存项，其他会话的上下文链不受影响。
+     * </p>
+     *
+     * @param chatType 对话类型
+     * @param chatId   群号或好友QQ号
      */
-    private String buildSystemPrompt(BotChatContext botChatContext) {
-        BotChatContact user = botContactService.getFriendUser(String.valueOf(botChatContext.getChatId()));
-        int favorability = user.getFavorability();
-        int intimacyLevel = Math.min(user.getIntimacyLevel(), 5);
+    public String baseModel(BotChatContext.ChatType chatType, String chatId) {
+        String model = contactModel(chatType, chatId);
+        return model == null ? volcArkConfig.getModel() : model;
+    }
 
-        // temperature 处理
-        BigDecimal aiTempBig = user.getAiTemperature();
-        double aiTemperature = (aiTempBig != null) ? aiTempBig.doubleValue() : 0.7;
+    /**
+     * 好友自己选择且仍可用的模型；未选择或群聊时为 null
+     */
+    private String contactModel(BotChatContext.ChatType chatType, String chatId) {
+        if (chatType != BotChatContext.ChatType.PRIVATE) {
+            return null;
+        }
+        BotChatContact contact = botContactService.getFriendUser(chatId);
+        String model = contact == null ? null : contact.getAiModel();
+        if (model == null || model.isBlank() || !volcArkConfig.getModels().contains(model)) {
+            return null;
+        }
+        return model;
+    }
 
-        StringBuilder sb = new StringBuilder();
+    /**
+     * 为开启新链（或无上下文链的流式请求）的一轮选择模型：好友指定了模型时尊重其选择，只按档位决定深度思考
+     */
+    private ModelRouter.Route route(String prompt, BotChatContext botChatContext, String baseModel) {
+        if (contactModel(botChatContext.getChatType(), botChatContext.getChatId()) != null) {
+            return modelRouter.routeThinking(prompt, botChatContext.getChatType(), baseModel);
+        }
+        return modelRouter.route(prompt, botChatContext.getChatType(), baseModel);
+    }
 
-        sb.append("你就是一个普普通通的女孩子 有小情绪有小脾气 会因为和他聊天慢慢改变态度\n");
-        sb.append("你根本不知道AI是什么 更不会提程序系统模型这些 就跟现实朋友一样随便聊\n");
+    /**
+     * 模型切换检测（会话维度）：会话绑定的模型与该会话的基础模型不一致时重置上下文
+     */
+    private void resetOnModelSwitch(BotChatContext botChatContext, String newModel) {
+        // ========== 修复1：模型切换检测改为「会话维度」（绑定到ChatContext） ==========
+        // 从ChatContext获取当前模型（而非全局变量）
+        String sessionCurrentModel = botChatContext.getCurrentModel();
 
-        // 关系+好感合并，减少重复
-        sb.append("你们现在的关系感觉：");
-        if (intimacyLevel >= 5 || favorability >= 200) {
-            sb.append("他就是你喜欢的人啦 会黏着他 撒娇吃醋占有欲都有点\n");
-        } else if (intimacyLevel >= 4 || favorability >= 150) {
-            sb.append("对他有甜甜的感觉 会吃醋在意他 偶尔撒娇调侃\n");
-        } else if (intimacyLevel >= 2 || favorability >= 80) {
-            sb.append("挺喜欢和他聊天的 关心他 语气软软的多互动\n");
+        // 判断模型是否变更（会话维度）
+        if (sessionCurrentModel == null || !sessionCurrentModel.equals(newModel)) {
+            botChatContext.setMessageId(null); // 重置ID
+            if (botChatContext.getMessages() != null) {
+                botChatContext.getMessages().clear(); // 清空历史
+            }
+            botChatContext.setCurrentModel(newModel); // 会话维度更新模型
+            log.info("会话[{}]检测到AI模型切换（{}→{}），已重置对话上下文",
+                    botChatContext.getChatId(), sessionCurrentModel, newModel);
+        }
+    }
+
+    /**
+     * 后台记忆摘要写入新记忆后，丢弃旧的上下文链和已被摘要的历史，本轮以新记忆重新开始
+     * <p>摘要任务提交之后才产生的对话尚未写入记忆，全部保留</p>
+     */
+    private void restartOnNewMemory(BotChatContext botChatContext) {
+        ChatMessage boundary = memorySummarizer.takeRestart(botChatContext.getChatId());
+        if (boundary == null) {
+            return;
+        }
+        botChatContext.setMessageId(null);
+        contextWindow.dropThrough(botChatContext, boundary);
+        log.info("会话[{}]记忆摘要已更新，重开上下文链", botChatContext.getChatId());
+    }
+
+    /**
+     * 组装系统提示
+     * <p>
+     * 拆为两段以配合方舟上下文缓存：
+     * <ul>
+     *     <li>prefix：基础人设 + 用户风格模版，只随人格模版变化，逐字节稳定，放在请求最前面</li>
+     *     <li>state：关系/情绪/随性度/记忆，每轮可能变化，放在历史之后、用户消息之前</li>
+     * </ul>
+     * 两段都只取决于 {@link PromptKey}，按会话（对话类型+ID，群和好友的同号ID互不影响）缓存上一次的结果：
+     * 好友记录取自 BotContactService 的缓存，输入不变时直接复用，不访问数据库也不重新拼接。
+     * 好友记录被更新（人格、好感度、模型）后 key 随之变化，下一轮自动重建。
+     * </p>
+     */
+    private SystemPrompt assembleSystemPrompt(BotChatContext botChatContext) {
+        String chatId = botChatContext.getChatId();
+        String cacheKey = botChatContext.getChatType() + chatId;
+        PromptKey key = PromptKey.of(botContactService.getFriendUser(chatId));
+        CachedPrompt cached = systemPrompts.getIfPresent(cacheKey);
+        if (cached != null && cached.key().equals(key)) {
+            return cached.prompt();
+        }
+
+        String prefix;
+        if (cached != null && Objects.equals(cached.key().persona(), key.persona())) {
+            // 人格模版未变，沿用同一个前缀实例
+            prefix = cached.prompt().prefix();
+        } else if (key.persona() != null && !key.persona().trim().isEmpty()) {
+            log.info("会话[{}]加载用户自定义Prompt：{}", chatId,
+                    key.persona().substring(0, Math.min(50, key.persona().length())) + "...");
+            prefix = BASE_PROMPT + "\n用户风格模版：\n" + key.persona() + "\n";
         } else {
-            sb.append("认识一阵子了 聊天自然点 不用来太客气\n");
+            log.info("会话[{}]未找到自定义Prompt，使用默认Prompt", chatId);
+            prefix = DEFAULT_PREFIX;
         }
+        // 构建当前状态（好感度 + 亲密等级 + 情绪 + 记忆）
+        SystemPrompt systemPrompt = new SystemPrompt(prefix, buildStatePrompt(key));
+        systemPrompts.put(cacheKey, new CachedPrompt(key, systemPrompt));
+        return systemPrompt;
+    }
+
+    /**
+     * Kimi K2 专属终极优化版（更自然、更防ooc）：随好友状态变化的部分
+     */
+    private String buildStatePrompt(PromptKey key) {
+        StringBuilder sb = new StringBuilder(256);
+
+        // 关系+好感合并，减少重复
+        sb.append("你们现在的关系感觉：");
+        sb.append(switch (key.relation()) {
+            case 3 -> "他就是你喜欢的人啦 会黏着他 撒娇吃醋占有欲都有点\n";
+            case 2 -> "对他有甜甜的感觉 会吃醋在意他 偶尔撒娇调侃\n";
+            case 1 -> "挺喜欢和他聊天的 关心他 语气软软的多互动\n";
+            default -> "认识一阵子了 聊天自然点 不用来太客气\n";
+        });
 
         // 情绪
         sb.append("你现在心情：");
-        sb.append(switch (user.getMood()) {
+        sb.append(switch (key.mood()) {
             case -3, -2 -> "有点生气 话少冷冷的\n";
             case -1 -> "不太开心 提不起劲\n";
             case 1 -> "还不错 温柔点\n";
@@ -276,25 +506,62 @@ public class ArkDoubaoService {
 
         // temperature控制随性度
         sb.append("聊天感觉：");
-        if (aiTemperature < 0.5) {
-            sb.append("稳一点 温柔内敛 不太跳脱\n");
-        } else if (aiTemperature < 0.9) {
-            sb.append("随性自然 偶尔俏皮调皮\n");
-        } else {
-            sb.append("超活泼 想到啥说啥 小女生叽叽喳喳\n");
-        }
+        sb.append(switch (key.temperature()) {
+            case 0 -> "稳一点 温柔内敛 不太跳脱\n";
+            case 1 -> "随性自然 偶尔俏皮调皮\n";
+            default -> "超活泼 想到啥说啥 小女生叽叽喳喳\n";
+        });
 
         // 记忆
-        if (user.getAiMemorySummary() != null && !user.getAiMemorySummary().isBlank()) {
-            sb.append("你记得他这些事 聊天时自然提提：").append(user.getAiMemorySummary()).append("\n");
+        if (key.memory() != null && !key.memory().isBlank()) {
+            sb.append("你记得他这些事 聊天时自然提提：").append(key.memory()).append("\n");
         }
 
-        // 约束（精简到极致）
-        sb.append("聊天注意啦：说话像真人一样自然 短句多 标点少用 表情偶尔一个就好 括号吐槽别每句带 别太正式 想到啥说啥\n");
-
         return sb.toString();
     }
 
+    /**
+     * 系统提示的全部输入：关系档位、情绪、随性度档位、记忆摘要、人格模版
+     * <p>好友记录不存在（如群聊）时按新好友的默认值处理</p>
+     */
+    private record PromptKey(int relation, int mood, int temperature, String memory, String persona) {
+
+        static PromptKey of(BotChatContact user) {
+            if (user == null) {
+                return new PromptKey(0, 0, 1, null, null);
+            }
+            int favorability = Objects.requireNonNullElse(user.getFavorability(), 0);
+            int intimacyLevel = Math.min(Objects.requireNonNullElse(user.getIntimacyLevel(), 0), 5);
+            int relation;
+            if (intimacyLevel >= 5 || favorability >= 200) {
+                relation = 3;
+            } else if (intimacyLevel >= 4 || favorability >= 150) {
+                relation = 2;
+            } else if (intimacyLevel >= 2 || favorability >= 80) {
+                relation = 1;
+            } else {
+                relation = 0;
+            }
+
+            // temperature 处理
+            BigDecimal aiTempBig = user.getAiTemperature();
+            double aiTemperature = (aiTempBig != null) ? aiTempBig.doubleValue() : 0.7;
+            int temperature = aiTemperature < 0.5 ? 0 : aiTemperature < 0.9 ? 1 : 2;
+
+            return new PromptKey(relation, Objects.requireNonNullElse(user.getMood(), 0), temperature,
+                    user.getAiMemorySummary(), user.getAiPersona());
+        }
+    }
+
+    /**
+     * 系统提示：稳定前缀 + 当前状态
+     */
+    private record SystemPrompt(String prefix, String state) {
+    }
+
+    private record CachedPrompt(PromptKey key, SystemPrompt prompt) {
+    }
+
     public String streamChatWithDoubao(String prompt) {
         // 参数校验
         if (prompt == null || prompt.trim().isEmpty()) {
@@ -309,15 +576,15 @@ public class ArkDoubaoService {
         messages.add(userMessage);
 
         ChatCompletionRequest streamChatCompletionRequest = ChatCompletionRequest.builder()
-                .model(volcArkConfig.getModel())
+                .model(degradationLadder.resolveModel(volcArkConfig.getModel()))
                 .messages(messages)
-                .thinking(volcArkConfig.isDeepThinking()
+                .thinking(degradationLadder.resolveThinking(volcArkConfig.isDeepThinking())
                         ? new ChatCompletionRequest.ChatCompletionRequestThinking("enabled")
                         : null)
                 .build();
 
         StringBuilder sb = new StringBuilder();
-        arkService.streamChatCompletion(streamChatCompletionRequest)
+        arkGuard.stream(streamChatCompletionRequest.getModel(), () -> arkService.streamChatCompletion(streamChatCompletionRequest))
                 .doOnError(e -> log.error("流式调用出现异常", e)) // 规范日志记录,而非仅打印堆栈
                 .filter(choice -> choice.getChoices() != null && !choice.getChoices().isEmpty()) // 过滤无效分片
                 .map(choice -> choice.getChoices().getFirst().getMessage().getContent().toString()) // 提取分片内容
@@ -358,22 +625,22 @@ public class ArkDoubaoService {
             messages.add(ChatMessage.builder().role(ChatMessageRole.USER).content(prompt.trim()).build());
 
             ChatCompletionRequest streamChatCompletionRequest = ChatCompletionRequest.builder()
-                    .model(volcArkConfig.getModel())
+                    .model(degradationLadder.resolveModel(volcArkConfig.getModel()))
                     .messages(messages)
-                    .thinking(volcArkConfig.isDeepThinking()
+                    .thinking(degradationLadder.resolveThinking(volcArkConfig.isDeepThinking())
                             ? new ChatCompletionRequest.ChatCompletionRequestThinking("enabled")
                             : null)
                     .build();
 
             StringBuilder sb = new StringBuilder();
-            arkService.streamChatCompletion(streamChatCompletionRequest)
+            arkGuard.stream(streamChatCompletionRequest.getModel(), () -> arkService.streamChatCompletion(streamChatCompletionRequest))
                     .doOnError(e -> log.error("流式连续对话调用出现异常", e))
                     .filter(choice -> choice.getChoices() != null && !choice.getChoices().isEmpty())
                     .map(choice -> choice.getChoices().getFirst().getMessage().getContent().toString())
                     .filter(content -> content != null && !content.trim().isEmpty())
                     .blockingForEach(sb::append);
 
-            log.info("豆包API流式连续对话调用成功,响应结果:{}", sb);
+            log.debug("豆包API流式连续对话调用成功,响应结果:{}", sb);
             return sb.toString();
         } catch (Exception e) {
             log.error("豆包API流式连续对话调用失败,输入prompt:{}", prompt, e);
@@ -381,6 +648,207 @@ public class ArkDoubaoService {
         }
     }
 
+    /**
+     * 流式连续对话方法:边生成边按句回调，用于分条发送回复
+     * <p>
+     * 基于 Chat 流式接口而不是 Responses 接口，上下文由 botChatContext 中的历史消息（用户+助手）承载：
+     * 不使用 previousResponseId 上下文链，每轮重发完整历史，只有稳定前缀部分可能命中方舟缓存；
+     * 这样任一服务商都能接续同一份历史，流式轮次也不读写 messageId。
+     * 每凑够一句（句末标点或换行）调用一次 onChunk，调用方可立即发送到QQ。
+     * 在尚未发出任何内容时失败，会通过 onChunk 发出兜底回复。
+     * </p>
+     *
+     * @param prompt         用户输入的提示词/问题
+     * @param botChatContext 会话上下文
+     * @param onChunk        每切出一句时回调，在调用线程上同步执行
+     * @return 完整回复内容
+     */
+    public String streamMultiChatWithDoubao(String prompt, BotChatContext botChatContext, Consumer<String> onChunk) {
+        botChatContext.setLastReplyCached(false);
+        // 参数校验
+        if (prompt == null || prompt.trim().isEmpty()) {
+            extracted();
+            throw new IllegalArgumentException("输入内容不能为空");
+        }
+
+        String baseModel = baseModel(botChatContext.getChatType(), botChatContext.getChatId());
+        resetOnModelSwitch(botChatContext, baseModel);
+        restartOnNewMemory(botChatContext);
+        SystemPrompt systemPrompt = assembleSystemPrompt(botChatContext);
+        if (botChatContext.getMessages() == null) {
+            botChatContext.setMessages(new ArrayList<>());
+        }
+        ModelRouter.Route route = route(prompt, botChatContext, baseModel);
+        String model = degradationLadder.resolveModel(route.model());
+        GroupReplyCache.Key cacheKey = groupReplyCache.keyOf(prompt, botChatContext.getChatType(), systemPrompt.prefix(), model);
+        String cached = cacheKey == null ? null : groupReplyCache.get(cacheKey);
+        if (cached != null) {
+            SentenceChunker chunker = new SentenceChunker(
+                    aiStreamConfig.getMinChunkChars(), aiStreamConfig.getMaxChunkChars(), onChunk);
+            chunker.append(cached);
+            chunker.finish();
+            return replyFromCache(botChatContext, prompt, cached, model);
+        }
+        contextWindow.trim(botChatContext, model);
+        ChatMessage userMessage = ChatMessage.builder().role(ChatMessageRole.USER).content(prompt.trim()).build();
+        final List<ChatMessage> messages = chatMessages(systemPrompt, botChatContext.getMessages(), userMessage);
+        conversationLog.record(botChatContext.getChatId(), "prompt", messages);
+
+        boolean thinking = degradationLadder.resolveThinking(route.thinking());
+        ChatCompletionRequest streamChatCompletionRequest = ChatCompletionRequest.builder()
+                .model(model)
+                .messages(messages)
+                .thinking(thinking ? new ChatCompletionRequest.ChatCompletionRequestThinking("enabled") : null)
+                .build();
+
+        StringBuilder sb = new StringBuilder();
+        SentenceChunker chunker = new SentenceChunker(
+                aiStreamConfig.getMinChunkChars(), aiStreamConfig.getMaxChunkChars(), onChunk);
+        long startedAt = System.nanoTime();
+        // 按各服务商的首字耗时和错误率选择本轮的服务商，对冲只在方舟内部进行；
+        // 好友指定了方舟模型时固定走方舟，也不改用其他服务商
+        boolean pinned = contactModel(botChatContext.getChatType(), botChatContext.getChatId()) != null;
+        ChatProvider provider = pinned ? arkChatProvider : providerBalancer.select();
+        Flowable<String> contents;
+        if (provider == arkChatProvider) {
+            contents = streamContent(streamChatCompletionRequest);
+            if (hedgingPolicy.applies(model)) {
+                contents = hedgeStream(contents, ChatCompletionRequest.builder()
+                        .model(hedgingPolicy.getModel())
+                        .messages(messages)
+                        .thinking(new ChatCompletionRequest.ChatCompletionRequestThinking("disabled"))
+                        .build(), startedAt);
+            }
+        } else {
+            contents = provider.stream(provider.resolveModel(route.tier(), model), messages, thinking);
+        }
+        if (!pinned) {
+            contents = providerBalancer.track(provider, contents,
+                    next -> next.stream(next.resolveModel(route.tier(), model), messages, thinking));
+        }
+        try {
+            contents.blockingForEach(content -> {
+                sb.append(content);
+                chunker.append(content);
+            });
+            chunker.finish();
+        } catch (Exception e) {
+            if (e instanceof CircuitOpenException) {
+                log.warn("会话[{}]{}，回复本地兜底文案", botChatContext.getChatId(), e.getMessage());
+            } else {
+                log.error("豆包API流式连续对话调用失败,输入prompt:{}", prompt, e);
+            }
+            if (!chunker.hasEmitted()) {
+                String fallback = e instanceof CircuitOpenException ? arkGuard.getFallbackReply() : ERROR_REPLY;
+                onChunk.accept(fallback);
+                return fallback;
+            }
+            // 已经发出部分内容：把已生成的半句补发出去，本轮不计入上下文
+            chunker.finish();
+            return sb.toString();
+        }
+
+        // 流式接口不返回用量，按本地估算计入档位成本
+        modelRouter.record(route.tier(), System.nanoTime() - startedAt,
+                contextWindow.estimate(messages), ContextWindow.estimate(sb.toString()));
+        List<ChatMessage> turn = List.of(userMessage,
+                ChatMessage.builder().role(ChatMessageRole.ASSISTANT).content(sb.toString()).build());
+        botChatContext.getMessages().addAll(turn);
+        memorySummarizer.onTurn(botChatContext, turn);
+        conversationLog.record(botChatContext.getChatId(), "response", sb);
+        if (cacheKey != null && !sb.isEmpty()) {
+            groupReplyCache.put(cacheKey, sb.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 开启新链的轮次由负载均衡选中了方舟以外的服务商：带上完整历史走该服务商的流式接口，收集为整段回复
+     * <p>
+     * 其他服务商没有方舟的上下文链，本轮不产生 previousResponseId，下一轮仍按开启新链处理：
+     * 再次参与服务商选择，选中方舟时带上本地历史开链。选中的服务商在输出前失败时改用权重次高的服务商。
+     * </p>
+     */
+    private String replyViaProvider(ChatProvider provider, String prompt, BotChatContext botChatContext,
+                                    SystemPrompt systemPrompt, ModelRouter.Route route, String model,
+                                    GroupReplyCache.Key cacheKey) {
+        if (botChatContext.getMessages() == null) {
+            botChatContext.setMessages(new ArrayList<>());
+        }
+        contextWindow.trim(botChatContext, model);
+        ChatMessage userMessage = ChatMessage.builder().role(ChatMessageRole.USER).content(prompt.trim()).build();
+        List<ChatMessage> messages = chatMessages(systemPrompt, botChatContext.getMessages(), userMessage);
+        boolean thinking = degradationLadder.resolveThinking(route.thinking());
+
+        long startedAt = System.nanoTime();
+        String reply = providerBalancer.track(provider, provider.stream(provider.resolveModel(route.tier(), model), messages, thinking),
+                        next -> next.stream(next.resolveModel(route.tier(), model), messages, thinking))
+                .collect(StringBuilder::new, StringBuilder::append)
+                .blockingGet()
+                .toString();
+        // 流式接口不返回用量，按本地估算计入档位成本
+        modelRouter.record(route.tier(), System.nanoTime() - startedAt,
+                contextWindow.estimate(messages), ContextWindow.estimate(reply));
+        if (cacheKey != null && !reply.isBlank()) {
+            groupReplyCache.put(cacheKey, reply);
+        }
+
+        botChatContext.setMessageId(null);
+        if (botChatContext.getUnsentMessages() != null) {
+            botChatContext.getUnsentMessages().clear();
+        }
+        List<ChatMessage> turn = List.of(userMessage,
+                ChatMessage.builder().role(ChatMessageRole.ASSISTANT).content(reply).build());
+        botChatContext.getMessages().addAll(turn);
+        contextWindow.trim(botChatContext, model);
+        memorySummarizer.onTurn(botChatContext, turn);
+        conversationLog.record(botChatContext.getChatId(), "response", reply);
+        return reply;
+    }
+
+    /**
+     * Chat 接口的完整消息列表：稳定前缀 + 历史在前，当前状态紧挨用户消息，前缀部分可命中方舟上下文缓存
+     */
+    private static List<ChatMessage> chatMessages(SystemPrompt systemPrompt, List<ChatMessage> history, ChatMessage userMessage) {
+        List<ChatMessage> messages = new ArrayList<>(history.size() + 3);
+        messages.add(ChatMessage.builder().role(ChatMessageRole.SYSTEM).content(systemPrompt.prefix()).build());
+        messages.addAll(history);
+        messages.add(ChatMessage.builder().role(ChatMessageRole.SYSTEM).content(systemPrompt.state()).build());
+        messages.add(userMessage);
+        return messages;
+    }
+
+    /**
+     * 命中群聊回复缓存：不请求方舟，本轮照常记入本地历史和对话日志，并标记本轮未调用AI
+     * <p>
+     * 服务端上下文链中没有这一轮，但链保持不变：这一轮记为待补发，下一轮沿用链时随请求一起发出。
+     * 待补发的轮次过多时才放弃上下文链，下一轮带上本地历史重开。
+     * </p>
+     */
+    private String replyFromCache(BotChatContext botChatContext, String prompt, String reply, String model) {
+        if (botChatContext.getMessages() == null) {
+            botChatContext.setMessages(new ArrayList<>());
+        }
+        List<ChatMessage> turn = List.of(
+                ChatMessage.builder().role(ChatMessageRole.USER).content(prompt.trim()).build(),
+                ChatMessage.builder().role(ChatMessageRole.ASSISTANT).content(reply).build());
+        botChatContext.getMessages().addAll(turn);
+        contextWindow.trim(botChatContext, model);
+        if (botChatContext.getMessageId() != null) {
+            if (botChatContext.getUnsentMessages() == null) {
+                botChatContext.setUnsentMessages(new ArrayList<>());
+            }
+            botChatContext.getUnsentMessages().addAll(turn);
+            if (botChatContext.getUnsentMessages().size() > MAX_UNSENT_MESSAGES) {
+                botChatContext.setMessageId(null);
+                botChatContext.getUnsentMessages().clear();
+            }
+        }
+        botChatContext.setLastReplyCached(true);
+        conversationLog.record(botChatContext.getChatId(), "cache-hit", reply);
+        return reply;
+    }
+
     /**
      * 查询指定对话的详细信息
      *
@@ -401,7 +869,7 @@ public class ArkDoubaoService {
                     .build();
 
             // 调用API查询对话
-            ResponseObject response = arkService.getResponse(request);
+            ResponseObject response = arkGuard.call(ArkGuard.RESPONSES_API, () -> arkService.getResponse(request));
             log.info("查询对话成功,responseId:{}, 响应结果:{}", responseId, response);
             return response;
         } catch (Exception e) {
@@ -431,7 +899,7 @@ public class ArkDoubaoService {
                     .build();
 
             // 调用API获取消息列表
-            ListInputItemsResponse response = arkService.listResponseInputItems(request);
+            ListInputItemsResponse response = arkGuard.call(ArkGuard.RESPONSES_API, () -> arkService.listResponseInputItems(request));
             log.info("获取对话消息列表成功,responseId:{}, 响应结果:{}", responseId, response);
             return response;
         } catch (Exception e) {
@@ -460,7 +928,7 @@ public class ArkDoubaoService {
                     .build();
 
             // 调用API关闭对话
-            DeleteResponseResponse response = arkService.deleteResponse(request);
+            DeleteResponseResponse response = arkGuard.call(ArkGuard.RESPONSES_API, () -> arkService.deleteResponse(request));
             log.info("关闭对话成功,responseId:{}, 响应结果:{}", responseId, response);
             return response;
         } catch (Exception e) {
@@ -469,6 +937,229 @@ public class ArkDoubaoService {
         }
     }
 
+    // ========== 异步接口：在虚拟线程上执行，带超时，取消/超时时中止底层HTTP调用 ==========
+
+    /**
+     * {@link #chatWithDoubao} 的异步版本
+     */
+    public CompletableFuture<String> chatWithDoubaoAsync(String prompt) {
+        return async(() -> chatWithDoubao(prompt));
+    }
+
+    /**
+     * {@link #multiChatWithDoubao} 的异步版本
+     * <p>同一会话的调用需由调用方串行化，previousResponseId 链不支持并发修改；超时时返回的 future 在本轮退出后才完成</p>
+     */
+    public CompletableFuture<String> multiChatWithDoubaoAsync(String prompt, BotChatContext botChatContext) {
+        return async(() -> multiChatWithDoubao(prompt, botChatContext));
+    }
+
+    /**
+     * {@link #streamChatWithDoubao} 的异步版本
+     */
+    public CompletableFuture<String> streamChatWithDoubaoAsync(String prompt) {
+        return async(() -> streamChatWithDoubao(prompt));
+    }
+
+    /**
+     * {@link #queryChat} 的异步版本
+     */
+    public CompletableFuture<ResponseObject> queryChatAsync(String responseId) {
+        return async(() -> queryChat(responseId));
+    }
+
+    /**
+     * {@link #getChatMessageList} 的异步版本
+     */
+    public CompletableFuture<ListInputItemsResponse> getChatMessageListAsync(String responseId) {
+        return async(() -> getChatMessageList(responseId));
+    }
+
+    /**
+     * {@link #closeChat} 的异步版本
+     */
+    public CompletableFuture<DeleteResponseResponse> closeChatAsync(String responseId) {
+        return async(() -> closeChat(responseId));
+    }
+
+    /**
+     * 在虚拟线程上执行同步调用
+     * <p>
+     * 超过 volc.ark.timeout 时中断执行线程，虚拟线程上阻塞中的 socket 读写随之关闭，方舟请求被中止；
+     * 返回的 future 要等执行线程真正退出后才以 {@link TimeoutException} 异常完成，
+     * 调用方据此释放会话时，超时的这一轮已不会再写会话上下文。
+     * 调用方主动 cancel 时立即返回并中断执行线程，不等待其退出。
+     * </p>
+     */
+    private <T> CompletableFuture<T> async(Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        Future<?> task = asyncExecutor.submit(() -> {
+            try {
+                T value = call.call();
+                if (timedOut.get()) {
+                    result.completeExceptionally(new TimeoutException("方舟调用超时"));
+                } else {
+                    result.complete(value);
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(timedOut.get() ? new TimeoutException("方舟调用超时") : e);
+            }
+        });
+        long timeout = volcArkConfig.getTimeout().toMillis();
+        CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS).execute(() -> {
+            if (!result.isDone() && timedOut.compareAndSet(false, true)) {
+                task.cancel(true);
+            }
+        });
+        result.whenComplete((_, _) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdownAsyncExecutor() {
+        asyncExecutor.shutdownNow();
+    }
+
+    /**
+     * 流式对话的正文内容
+     */
+    private Flowable<String> streamContent(ChatCompletionRequest request) {
+        return arkChatProvider.stream(request);
+    }
+
+    /**
+     * 对冲流式请求：主模型超过等待时间仍无正文时订阅快速模型，先产出正文的一方胜出，另一方被取消
+     * <p>等待期间主模型先出正文时，对冲请求根本不会发出；额度不足时只等主模型</p>
+     */
+    private Flowable<String> hedgeStream(Flowable<String> primary, ChatCompletionRequest hedgeRequest, long startedAt) {
+        AtomicBoolean firstOutput = new AtomicBoolean();
+        Flowable<String> timedPrimary = primary.doOnNext(_ -> {
+            if (firstOutput.compareAndSet(false, true)) {
+                hedgingPolicy.recordFirstOutput(System.nanoTime() - startedAt);
+            }
+        });
+        long delay = hedgingPolicy.firstOutputDelayMillis();
+        Flowable<String> hedge = Flowable.defer(() -> {
+                    if (!hedgingPolicy.tryHedge()) {
+                        return Flowable.<String>never();
+                    }
+                    log.info("主模型{}ms内无输出，对冲请求快速模型{}", delay, hedgeRequest.getModel());
+                    return streamContent(hedgeRequest).doOnNext(_ -> {
+                        if (firstOutput.compareAndSet(false, true)) {
+                            // 主模型的实际首个输出耗时至少为此
+                            hedgingPolicy.recordFirstOutput(System.nanoTime() - startedAt);
+                            hedgingPolicy.hedgeWon();
+                        }
+                    });
+                })
+                .delaySubscription(delay, TimeUnit.MILLISECONDS);
+        return timedPrimary.ambWith(hedge);
+    }
+
+    /**
+     * 对冲整段请求：主模型在等待时间内完成则直接返回；否则占用额度再请求快速模型，取先成功的一个并取消另一个
+     */
+    private Hedged createResponseHedged(CreateResponsesRequest primary, Supplier<CreateResponsesRequest> secondary)
+            throws Exception {
+        long startedAt = System.nanoTime();
+        long delay = hedgingPolicy.responseDelayMillis();
+        CompletableFuture<ResponseObject> first = async(() -> arkGuard.call(primary.getModel(), () -> arkService.createResponse(primary)));
+        CompletableFuture<ResponseObject> second = null;
+        try {
+            try {
+                ResponseObject response = first.get(delay, TimeUnit.MILLISECONDS);
+                hedgingPolicy.recordResponse(System.nanoTime() - startedAt);
+                return new Hedged(response, false);
+            } catch (TimeoutException e) {
+                if (!hedgingPolicy.tryHedge()) {
+                    ResponseObject response = first.get();
+                    hedgingPolicy.recordResponse(System.nanoTime() - startedAt);
+                    return new Hedged(response, false);
+                }
+            }
+            log.info("主模型{}ms内未完成，对冲请求快速模型{}", delay, hedgingPolicy.getModel());
+            CompletableFuture<ResponseObject> hedge = async(() -> {
+                CreateResponsesRequest request = secondary.get();
+                return arkGuard.call(request.getModel(), () -> arkService.createResponse(request));
+            });
+            second = hedge;
+            CompletableFuture<ResponseObject> race = new CompletableFuture<>();
+            first.thenAccept(race::complete);
+            hedge.thenAccept(race::complete);
+            // 两个都失败时才失败
+            CompletableFuture.allOf(first, hedge).whenComplete((_, e) -> {
+                if (e != null) {
+                    race.completeExceptionally(e);
+                }
+            });
+            ResponseObject response = race.get();
+            boolean hedgeWon = hedge.isDone() && !hedge.isCompletedExceptionally() && hedge.getNow(null) == response;
+            // 对冲胜出时主模型的实际耗时至少为此
+            hedgingPolicy.recordResponse(System.nanoTime() - startedAt);
+            if (hedgeWon) {
+                hedgingPolicy.hedgeWon();
+            }
+            return new Hedged(response, hedgeWon);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } finally {
+            first.cancel(true);
+            if (second != null) {
+                second.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 对冲结果
+     *
+     * @param response 先完成的响应
+     * @param hedgeWon 是否由对冲请求（快速模型）返回
+     */
+    private record Hedged(ResponseObject response, boolean hedgeWon) {
+    }
+
+    private static ItemEasyMessage systemItem(String text) {
+        return ItemEasyMessage.builder().role(ResponsesConstants.MESSAGE_ROLE_SYSTEM).content(
+                MessageContent.builder().stringValue(text).build()
+        ).build();
+    }
+
+    private static ItemEasyMessage historyItem(ChatMessage message) {
+        String role = message.getRole() == ChatMessageRole.ASSISTANT
+                ? ResponsesConstants.MESSAGE_ROLE_ASSISTANT : ResponsesConstants.MESSAGE_ROLE_USER;
+        return ItemEasyMessage.builder().role(role).content(
+                MessageContent.builder().stringValue(String.valueOf(message.getContent())).build()
+        ).build();
+    }
+
+    /**
+     * 记录本次请求的耗时、输入/输出token及缓存命中token
+     *
+     * @return 输入token数，响应中没有用量信息时返回0
+     */
+    private long recordUsage(ModelTier tier, String model, ResponseObject response, long elapsedNanos) {
+        var usage = response.getUsage();
+        if (usage == null) {
+            modelRouter.record(tier, elapsedNanos, 0, 0);
+            return 0;
+        }
+        var details = usage.getInputTokensDetails();
+        long inputTokens = tokens(usage.getInputTokens());
+        promptCacheMetrics.record(model, inputTokens, details == null ? 0 : tokens(details.getCachedTokens()));
+        modelRouter.record(tier, elapsedNanos, inputTokens, tokens(usage.getOutputTokens()));
+        return inputTokens;
+    }
+
+    private static long tokens(Number count) {
+        return count == null ? 0 : count.longValue();
+    }
+
     /*
     解析响应内容
      */
@@ -1,5 +1,8 @@
 package com.miko.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.miko.affection.FavorabilityContext;
 import com.miko.affection.FavorabilityEngine;
 import com.miko.affection.FavorabilityResult;
@@ -10,13 +13,62 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
-
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * 好友信息Service
+ * <p>
+ * 好友记录按 contact_id 缓存在内存中，每轮对话读取好友记录和人格模版都不再访问数据库；
+ * 缓存有容量上限和有效期，"不存在"的结果只短暂缓存。
+ * 写操作先写库，写成功后再更新缓存：好感度更新放入更新后的副本，其余写操作失效对应的缓存项；
+ * 缓存中的记录实例不做修改。
+ * </p>
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class BotContactService {
 
+    /**
+     * 最多缓存的好友记录数
+     */
+    private static final int MAX_CONTACTS = 10_000;
+
+    /**
+     * 好友记录的缓存有效期
+     */
+    private static final Duration CONTACT_TTL = Duration.ofMinutes(30);
+
+    /**
+     * "不存在"结果的缓存有效期
+     */
+    private static final Duration ABSENT_TTL = Duration.ofMinutes(1);
+
+    /**
+     * 亲密等级的缓存有效期
+     */
+    private static final Duration LEVEL_TTL = Duration.ofMinutes(10);
+
+    /**
+     * 好友记录缓存: key = contact_id, value = 好友记录（Optional.empty() 表示库中不存在）
+     */
+    private final Cache<String, Optional<BotChatContact>> contacts = Caffeine.newBuilder()
+            .maximumSize(MAX_CONTACTS)
+            .expireAfter(Expiry.<String, Optional<BotChatContact>>creating(
+                    (_, contact) -> contact.isPresent() ? CONTACT_TTL : ABSENT_TTL))
+            .build();
+
+    /**
+     * 亲密等级缓存: key = contact_id, value = 亲密等级（非好友为0），只用于群成员的配额，不占用好友记录缓存
+     */
+    private final Cache<String, Integer> intimacyLevels = Caffeine.newBuilder()
+            .maximumSize(MAX_CONTACTS)
+            .expireAfterWrite(LEVEL_TTL)
+            .build();
+
     private final BotContactMapper botContactMapper;
 
     /**
@@ -62,25 +114,56 @@ public class BotContactService {
         user.setUpdateTime(LocalDateTime.now());
 
         botContactMapper.insertFriendUser(user);
+        contacts.invalidate(authorId);
     }
 
 
     public void updateAiPrompt(String authorId, String prompt) {
         botContactMapper.updateAiPrompt(authorId, prompt);
+        contacts.invalidate(authorId);
+    }
+
+
+    /**
+     * 查询亲密等级，非好友返回0
+     * <p>好友记录已在缓存中时直接取用，否则只查亲密等级一列，群里大量非好友成员不会进入好友记录缓存</p>
+     */
+    public int getIntimacyLevel(String contactId) {
+        Optional<BotChatContact> cached = contacts.getIfPresent(contactId);
+        if (cached != null) {
+            return cached.map(BotChatContact::getIntimacyLevel).orElse(0);
+        }
+        return intimacyLevels.get(contactId,
+                id -> Objects.requireNonNullElse(botContactMapper.selectIntimacyLevelByQqId(id), 0));
     }
 
 
     public String getFriendUserAiPersona(String chatId) {
-        return botContactMapper.getFriendUserAiPersona(chatId);
+        BotChatContact user = getFriendUser(chatId);
+        return user == null ? null : user.getAiPersona();
     }
 
 
+    /**
+     * 查询好友记录，优先读缓存
+     * 不存在返回 null
+     */
     public BotChatContact getFriendUser(String authorId) {
-        return botContactMapper.getFriendUser(authorId);
+        return contacts.get(authorId, id -> Optional.ofNullable(botContactMapper.getFriendUser(id)))
+                .orElse(null);
     }
 
 
-    public void updateFriendUser(BotChatContact user, String msgFix) {
+    /**
+     * 按本轮消息更新好感度、亲密等级、情绪和聊天次数
+     * <p>在副本上计算，写库成功后才把副本放入缓存；写库失败时缓存中的记录保持原样</p>
+     *
+     * @param contactId 好友QQ号，即缓存的 key
+     * @return 更新后的好友记录
+     */
+    public BotChatContact updateFriendUser(String contactId, BotChatContact current, String msgFix) {
+        BotChatContact user = current.toBuilder().build();
+
         // 4️⃣ 构造好感度上下文
         FavorabilityContext ctx = FavorabilityContext.builder()
                 .currentFavorability(user.getFavorability())
@@ -108,11 +191,24 @@ public class BotContactService {
         }
 
         botContactMapper.updateGoodFeeling(user);
+        // 写库成功后直接放入更新后的副本，本轮后续读取好友记录时不必再查库
+        contacts.put(contactId, Optional.of(user));
+        intimacyLevels.put(contactId, Objects.requireNonNullElse(user.getIntimacyLevel(), 0));
+        return user;
     }
 
 
     public void updateAiModel(String authorId, String targetModel) {
         botContactMapper.updateAiModel(String.valueOf(authorId), targetModel);
+        contacts.invalidate(authorId);
         log.info("用户 {} AI模型更新为 {}", authorId, targetModel);
     }
+
+    /**
+     * 更新AI记忆摘要
+     */
+    public void updateAiMemorySummary(String authorId, String summary) {
+        botContactMapper.updateAiMemorySummary(authorId, summary);
+        contacts.invalidate(authorId);
+    }
 }
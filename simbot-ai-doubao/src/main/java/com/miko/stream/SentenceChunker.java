@@ -0,0 +1,105 @@
+package com.miko.stream;
+
+import java.util.function.Consumer;
+
+/**
+ * 按句切分流式输出
+ * <p>
+ * 逐段追加模型输出的增量文本，在句末标点或换行处切出一条消息交给下游；
+ * 不足 minChars 的短句与后文合并，一直没有边界时在 maxChars 处强制切分。
+ * 非线程安全，每轮对话使用一个实例。
+ * </p>
+ */
+public class SentenceChunker {
+
+    private final int minChars;
+    private final int maxChars;
+    private final Consumer<String> sink;
+    private final StringBuilder buffer = new StringBuilder();
+    private boolean emitted;
+
+    public SentenceChunker(int minChars, int maxChars, Consumer<String> sink) {
+        this.minChars = Math.max(1, minChars);
+        this.maxChars = Math.max(this.minChars, maxChars);
+        this.sink = sink;
+    }
+
+    /**
+     * 追加一段增量文本，凑够一句时立即发出
+     */
+    public void append(String delta) {
+        buffer.append(delta);
+        int cut;
+        while ((cut = nextCut()) > 0) {
+            emit(cut);
+        }
+    }
+
+    /**
+     * 输出结束，发出剩余内容
+     */
+    public void finish() {
+        emit(buffer.length());
+    }
+
+    /**
+     * 是否已经发出过至少一条消息
+     */
+    public boolean hasEmitted() {
+        return emitted;
+    }
+
+    /**
+     * 下一个切分位置（不含），没有可切分的位置时返回-1
+     */
+    private int nextCut() {
+        if (buffer.length() < minChars) {
+            return -1;
+        }
+        for (int i = minChars - 1; i < buffer.length() && i < maxChars; i++) {
+            if (isSentenceEnd(buffer.charAt(i))) {
+                int end = i + 1;
+                // 连续的标点和收尾引号/括号跟随上一句，如 "？！" "……" "。）"
+                while (end < buffer.length() && (isSentenceEnd(buffer.charAt(end)) || isClosing(buffer.charAt(end)))) {
+                    end++;
+                }
+                // 标点可能还在后续增量中，等下一段再判断
+                return end < buffer.length() ? end : -1;
+            }
+        }
+        if (buffer.length() < maxChars) {
+            return -1;
+        }
+        // 超长无句末标点：优先在最后一个逗号/空格处切分
+        for (int i = maxChars - 1; i >= minChars; i--) {
+            char c = buffer.charAt(i);
+            if (c == '，' || c == ',' || c == '、' || c == ' ') {
+                return i + 1;
+            }
+        }
+        return maxChars;
+    }
+
+    private void emit(int end) {
+        String chunk = buffer.substring(0, end).strip();
+        buffer.delete(0, end);
+        if (!chunk.isEmpty()) {
+            emitted = true;
+            sink.accept(chunk);
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return switch (c) {
+            case '\n', '。', '！', '？', '!', '?', '…', '～', '~', '；', ';' -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isClosing(char c) {
+        return switch (c) {
+            case '”', '’', '"', '\'', '）', ')', '」', '』', '】' -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package com.miko.warmup;
+
+import com.miko.config.VolcArkConfig;
+import com.volcengine.ark.runtime.exception.ArkHttpException;
+import com.volcengine.ark.runtime.model.responses.request.GetResponseRequest;
+import com.volcengine.ark.runtime.service.ArkService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * 方舟连接预热与保温
+ * <p>
+ * 启动完成后并发发起 warmup-connections 个轻量请求，DNS、TCP、TLS 握手在第一条消息到来前完成；
+ * 之后每隔 keep-warm-interval，若没有请求在进行、且距最近一次实际请求不超过 keep-warm-window，再发一次轻量请求，
+ * 连接不会因短暂空闲被服务端关闭，空闲后的第一条消息与平时的耗时一致；长时间无人使用（如夜间）时不再保温。
+ * 是否有实际请求由 arkDispatcher 观察：调度器每次回到空闲时记为一次活动，保温请求本身不计入。
+ * 轻量请求是查询一个不存在的 Response，方舟返回 404，不消耗 token，也不经过熔断器。
+ * 指标：ai.ark.ping（轻量请求耗时）、ai.ark.connections{state}（连接池中的连接数）。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ArkConnectionWarmer {
+
+    private static final GetResponseRequest PING = GetResponseRequest.builder().responseId("warmup").build();
+
+    private final VolcArkConfig.Http config;
+    private final ArkService arkService;
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    private final Timer ping;
+    /**
+     * 正在进行的预热/保温请求数
+     */
+    private final AtomicInteger pinging = new AtomicInteger();
+    /**
+     * 最近一次实际请求结束的时间（System.nanoTime），启动时视为有一次活动
+     */
+    private volatile long lastActivity = System.nanoTime();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ark-warmup-", 0).factory());
+
+    public ArkConnectionWarmer(VolcArkConfig volcArkConfig, ArkService arkService, ConnectionPool arkConnectionPool,
+                               Dispatcher arkDispatcher, MeterRegistry meterRegistry) {
+        this.config = volcArkConfig.getHttp();
+        this.arkService = arkService;
+        this.connectionPool = arkConnectionPool;
+        this.dispatcher = arkDispatcher;
+        arkDispatcher.setIdleCallback(() -> {
+            if (pinging.get() == 0) {
+                lastActivity = System.nanoTime();
+            }
+        });
+        this.ping = Timer.builder("ai.ark.ping")
+                .description("方舟预热/保温请求耗时")
+                .register(meterRegistry);
+        Gauge.builder("ai.ark.connections", arkConnectionPool, ConnectionPool::connectionCount)
+                .description("方舟连接池中的连接数")
+                .tag("state", "total")
+                .register(meterRegistry);
+        Gauge.builder("ai.ark.connections", arkConnectionPool, ConnectionPool::idleConnectionCount)
+                .description("方舟连接池中的连接数")
+                .tag("state", "idle")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 启动完成后预先建立连接，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (config.getWarmupConnections() <= 0) {
+            return;
+        }
+        CompletableFuture.allOf(IntStream.range(0, config.getWarmupConnections())
+                        .mapToObj(_ -> CompletableFuture.runAsync(this::ping, executor))
+                        .toArray(CompletableFuture[]::new))
+                .thenRun(() -> log.info("方舟连接预热完成，连接池中{}个连接", connectionPool.connectionCount()));
+    }
+
+    /**
+     * 近期有实际请求、当前又空闲时保温；有请求在进行时连接本身就是活的，不需要额外请求
+     */
+    @Scheduled(fixedDelayString = "${volc.ark.http.keep-warm-interval:45s}",
+            initialDelayString = "${volc.ark.http.keep-warm-interval:45s}")
+    public void keepWarm() {
+        if (!config.isKeepWarm()) {
+            return;
+        }
+        if (dispatcher.runningCallsCount() > pinging.get()) {
+            lastActivity = System.nanoTime();
+            return;
+        }
+        if (System.nanoTime() - lastActivity > config.getKeepWarmWindow().toNanos()) {
+            return;
+        }
+        executor.execute(this::ping);
+    }
+
+    private void ping() {
+        long startedAt = System.nanoTime();
+        pinging.incrementAndGet();
+        try {
+            arkService.getResponse(PING);
+        } catch (ArkHttpException _) {
+            // 预期的 404：连接已建立
+        } catch (Exception e) {
+            log.debug("方舟预热请求失败：{}", e.toString());
+            return;
+        } finally {
+            pinging.decrementAndGet();
+        }
+        ping.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,250 @@
+package com.miko;
+
+import com.miko.config.AiResilienceConfig;
+import com.miko.exception.ApiException;
+import com.miko.exception.CircuitOpenException;
+import com.miko.resilience.ArkGuard;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 方舟调用容错测试：熔断器状态机、试探调用、不计入统计的错误和重试额度
+ */
+class ArkGuardTests {
+
+    private static final String MODEL = "doubao-seed-1-6-251015";
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private AiResilienceConfig config;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        config = new AiResilienceConfig();
+        config.getBreaker().setWindow(10);
+        config.getBreaker().setMinCalls(4);
+        config.getBreaker().setFailureRateThreshold(0.5);
+        config.getBreaker().setOpenDuration(Duration.ofMillis(100));
+        config.getRetry().setMaxRetries(0);
+        config.getRetry().setBackoff(Duration.ofMillis(1));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    // 调用数达到 minCalls 且失败率达到阈值时打开，打开后不再发起调用
+    @Test
+    void opensAtMinCallsWhenFailureRateReached() {
+        ArkGuard guard = guard();
+        succeed(guard);
+        succeed(guard);
+        fail(guard, 500);
+        assertEquals(CLOSED, state());
+        fail(guard, 500);
+        assertEquals(OPEN, state());
+
+        AtomicInteger invoked = new AtomicInteger();
+        assertThrows(CircuitOpenException.class, () -> guard.call(MODEL, invoked::incrementAndGet));
+        assertEquals(0, invoked.get());
+    }
+
+    @Test
+    void staysClosedBelowFailureRate() {
+        ArkGuard guard = guard();
+        for (int i = 0; i < 3; i++) {
+            succeed(guard);
+        }
+        fail(guard, 503);
+        fail(guard, 503);
+        // 2/5 低于 0.5
+        assertEquals(CLOSED, state());
+    }
+
+    // open-duration 之后只放行一次试探调用，试探成功则关闭
+    @Test
+    void halfOpenAllowsSingleTrialAndClosesOnSuccess() throws Exception {
+        ArkGuard guard = opened();
+        sleep(config.getBreaker().getOpenDuration().plusMillis(50));
+
+        CountDownLatch trialStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> trial = CompletableFuture.supplyAsync(() -> {
+            try {
+                return guard.call(MODEL, () -> {
+                    trialStarted.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return "ok";
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(trialStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(HALF_OPEN, state());
+        // 试探调用进行中，其他调用直接拒绝
+        assertThrows(CircuitOpenException.class, () -> guard.call(MODEL, () -> "other"));
+
+        release.countDown();
+        assertEquals("ok", trial.get(5, TimeUnit.SECONDS));
+        assertEquals(CLOSED, state());
+        succeed(guard);
+    }
+
+    @Test
+    void failedTrialReopens() {
+        ArkGuard guard = opened();
+        sleep(config.getBreaker().getOpenDuration().plusMillis(50));
+
+        fail(guard, 500);
+        assertEquals(OPEN, state());
+        assertThrows(CircuitOpenException.class, () -> guard.call(MODEL, () -> "ok"));
+    }
+
+    // 试探调用因参数错误失败时不判定成败，归还试探名额，下一次调用作为新的试探
+    @Test
+    void ignoredTrialReturnsTheSlot() {
+        ArkGuard guard = opened();
+        sleep(config.getBreaker().getOpenDuration().plusMillis(50));
+
+        fail(guard, 400);
+        assertEquals(HALF_OPEN, state());
+        succeed(guard);
+        assertEquals(CLOSED, state());
+    }
+
+    // 参数错误既不重试也不计入熔断统计
+    @Test
+    void nonRetryableErrorsAreNeitherRetriedNorCounted() {
+        config.getRetry().setMaxRetries(3);
+        config.getRetry().setBudgetRatio(1.0);
+        ArkGuard guard = guard();
+        AtomicInteger invoked = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(ApiException.class, () -> guard.call(MODEL, () -> {
+                invoked.incrementAndGet();
+                throw new ApiException(400, "InvalidParameter");
+            }));
+        }
+        assertEquals(10, invoked.get());
+        assertEquals(CLOSED, state());
+        assertEquals(0, retries("retried"));
+    }
+
+    // 调用方取消（线程被中断）导致的失败不是服务端故障
+    @Test
+    void interruptedCallsAreNeitherRetriedNorCounted() {
+        config.getRetry().setMaxRetries(3);
+        config.getRetry().setBudgetRatio(1.0);
+        config.getBreaker().setMinCalls(1);
+        ArkGuard guard = guard();
+        AtomicInteger invoked = new AtomicInteger();
+
+        try {
+            Thread.currentThread().interrupt();
+            assertThrows(ApiException.class, () -> guard.call(MODEL, () -> {
+                invoked.incrementAndGet();
+                throw new ApiException(500, "connection closed");
+            }));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(1, invoked.get());
+        assertEquals(CLOSED, state());
+        assertEquals(0, retries("retried"));
+    }
+
+    // 每次调用积累 budget-ratio 个额度，最多累积 max-burst 个，重试次数受额度限制
+    @Test
+    void retryCreditsCapRetries() {
+        config.getBreaker().setMinCalls(100);
+        config.getRetry().setMaxRetries(5);
+        config.getRetry().setBudgetRatio(0.5);
+        config.getRetry().setMaxBurst(1);
+        ArkGuard guard = guard();
+        AtomicInteger invoked = new AtomicInteger();
+
+        // 额度0.5，不足一次重试
+        failCounting(guard, invoked);
+        assertEquals(1, invoked.get());
+        // 额度累积到1，重试一次后用尽
+        failCounting(guard, invoked);
+        assertEquals(3, invoked.get());
+
+        // 成功调用继续积累额度，但不超过 max-burst
+        for (int i = 0; i < 10; i++) {
+            succeed(guard);
+        }
+        invoked.set(0);
+        failCounting(guard, invoked);
+        assertEquals(2, invoked.get());
+        assertEquals(2, retries("retried"));
+        assertTrue(retries("budget_exhausted") >= 3);
+    }
+
+    private ArkGuard guard() {
+        return new ArkGuard(config, meterRegistry);
+    }
+
+    /**
+     * 最少调用数降为1，一次失败即打开
+     */
+    private ArkGuard opened() {
+        config.getBreaker().setMinCalls(1);
+        ArkGuard guard = guard();
+        fail(guard, 500);
+        assertEquals(OPEN, state());
+        return guard;
+    }
+
+    private static void succeed(ArkGuard guard) {
+        try {
+            assertEquals("ok", guard.call(MODEL, () -> "ok"));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void fail(ArkGuard guard, int code) {
+        ApiException e = assertThrows(ApiException.class, () -> guard.call(MODEL, () -> {
+            throw new ApiException(code, "status " + code);
+        }));
+        assertFalse(e instanceof CircuitOpenException);
+    }
+
+    private static void failCounting(ArkGuard guard, AtomicInteger invoked) {
+        assertThrows(ApiException.class, () -> guard.call(MODEL, () -> {
+            invoked.incrementAndGet();
+            throw new ApiException(503, "unavailable");
+        }));
+    }
+
+    private int state() {
+        return (int) meterRegistry.get("ai.breaker.state").tag("model", MODEL).gauge().value();
+    }
+
+    private double retries(String result) {
+        return meterRegistry.get("ai.retry").tag("result", result).counter().count();
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.miko;
+
+import com.miko.config.AiHedgeConfig;
+import com.miko.config.VolcArkConfig;
+import com.miko.hedge.HedgingPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对冲策略测试：适用条件、额度积累与消耗、等待时间
+ */
+class HedgingPolicyTests {
+
+    private static final String PRIMARY = "doubao-seed-1-6-251015";
+    private static final String FAST = "doubao-seed-1-6-flash-250828";
+
+    private AiHedgeConfig config;
+    private VolcArkConfig volcArkConfig;
+
+    @BeforeEach
+    void setUp() {
+        config = new AiHedgeConfig();
+        config.setEnabled(true);
+        config.setModel(FAST);
+        config.setMaxExtraRatio(0.5);
+        config.setMaxBurst(2);
+        config.setInitialDelay(Duration.ofSeconds(8));
+        config.setMinDelay(Duration.ofSeconds(2));
+        config.setMaxDelay(Duration.ofSeconds(20));
+        volcArkConfig = new VolcArkConfig();
+        volcArkConfig.setModels(List.of(PRIMARY, FAST));
+    }
+
+    @Test
+    void appliesOnlyWhenEnabledAndModelDiffers() {
+        HedgingPolicy policy = policy();
+        assertTrue(policy.applies(PRIMARY));
+        assertFalse(policy.applies(FAST));
+
+        config.setModel("not-in-models");
+        assertFalse(policy().applies(PRIMARY));
+
+        config.setModel(FAST);
+        config.setEnabled(false);
+        assertFalse(policy().applies(PRIMARY));
+    }
+
+    @Test
+    void hedgesAreLimitedByAccumulatedCredits() {
+        HedgingPolicy policy = policy();
+        assertFalse(policy.tryHedge());
+
+        // 每次主调用积累0.5个额度，两次才够一次对冲
+        policy.applies(PRIMARY);
+        assertFalse(policy.tryHedge());
+        policy.applies(PRIMARY);
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+    }
+
+    @Test
+    void creditsAreCappedAtMaxBurst() {
+        HedgingPolicy policy = policy();
+        for (int i = 0; i < 100; i++) {
+            policy.applies(PRIMARY);
+        }
+        assertTrue(policy.tryHedge());
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+    }
+
+    @Test
+    void delayUsesInitialValueUntilEnoughSamples() {
+        HedgingPolicy policy = policy();
+        assertEquals(8000, policy.responseDelayMillis());
+        record(policy, 10, 5_000);
+        assertEquals(8000, policy.responseDelayMillis());
+        assertEquals(8000, policy.firstOutputDelayMillis());
+    }
+
+    @Test
+    void delayFollowsPercentileWithinBounds() {
+        HedgingPolicy policy = policy();
+        record(policy, 100, 5_000);
+        assertEquals(5000, policy.responseDelayMillis());
+
+        HedgingPolicy fast = policy();
+        record(fast, 100, 100);
+        assertEquals(2000, fast.responseDelayMillis());
+
+        HedgingPolicy slow = policy();
+        record(slow, 100, 60_000);
+        assertEquals(20000, slow.responseDelayMillis());
+    }
+
+    private HedgingPolicy policy() {
+        return new HedgingPolicy(config, volcArkConfig, new SimpleMeterRegistry());
+    }
+
+    private static void record(HedgingPolicy policy, int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            policy.recordResponse(millis * 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.miko;
+
+import com.miko.config.AiRoutingConfig;
+import com.miko.config.VolcArkConfig;
+import com.miko.entity.BotChatContext;
+import com.miko.routing.ModelRouter;
+import com.miko.routing.ModelTier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 模型路由测试：本地分档规则，以及模型固定时只决定深度思考
+ */
+class ModelRouterTests {
+
+    private static final String BASE = "doubao-seed-1-6-lite-251015";
+    private static final String FAST = "doubao-seed-1-6-flash-250828";
+    private static final String THINKING = "doubao-seed-1-6-thinking-250715";
+
+    private AiRoutingConfig config;
+    private ModelRouter router;
+
+    @BeforeEach
+    void setUp() {
+        config = new AiRoutingConfig();
+        VolcArkConfig volcArkConfig = new VolcArkConfig();
+        volcArkConfig.setModel(BASE);
+        volcArkConfig.setModels(List.of(BASE, FAST, THINKING));
+        router = new ModelRouter(config, volcArkConfig, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shortChatterGoesFast() {
+        assertEquals(ModelTier.FAST, tier("哈哈哈笑死我了", BotChatContext.ChatType.PRIVATE));
+        assertEquals(FAST, router.route("哈哈哈笑死我了", BotChatContext.ChatType.PRIVATE, BASE).model());
+    }
+
+    @Test
+    void groupStatementGoesFastRegardlessOfLength() {
+        String text = "今天下班路上看到一只橘猫蹲在便利店门口，店员还给它搭了个小纸箱，真的太可爱了";
+        assertEquals(ModelTier.FAST, tier(text, BotChatContext.ChatType.GROUP));
+        assertEquals(ModelTier.STANDARD, tier(text, BotChatContext.ChatType.PRIVATE));
+    }
+
+    @Test
+    void shortQuestionStaysStandard() {
+        assertEquals(ModelTier.STANDARD, tier("你吃饭了吗", BotChatContext.ChatType.GROUP));
+        ModelRouter.Route route = router.route("你吃饭了吗", BotChatContext.ChatType.GROUP, BASE);
+        assertEquals(BASE, route.model());
+    }
+
+    @Test
+    void codeOrLongQuestionGoesThinking() {
+        assertEquals(ModelTier.THINKING, tier("这段 ```int a = 1;``` 有问题", BotChatContext.ChatType.PRIVATE));
+        assertEquals(ModelTier.THINKING, tier("为什么报 NullPointerException", BotChatContext.ChatType.GROUP));
+        assertEquals(ModelTier.THINKING, tier("请问" + "字".repeat(config.getHardMinChars()), BotChatContext.ChatType.PRIVATE));
+        assertEquals(ModelTier.THINKING, tier("字".repeat(config.getLongMinChars()), BotChatContext.ChatType.GROUP));
+
+        ModelRouter.Route route = router.route("为什么报 NullPointerException", BotChatContext.ChatType.GROUP, BASE);
+        assertEquals(THINKING, route.model());
+        assertTrue(route.thinking());
+    }
+
+    @Test
+    void unavailableTierModelFallsBackToBase() {
+        config.setFastModel("not-in-models");
+        assertEquals(BASE, router.route("哈哈", BotChatContext.ChatType.PRIVATE, BASE).model());
+    }
+
+    @Test
+    void fixedModelOnlyDecidesThinking() {
+        ModelRouter.Route fast = router.routeThinking("哈哈", BotChatContext.ChatType.PRIVATE, BASE);
+        assertEquals(ModelTier.FAST, fast.tier());
+        assertEquals(BASE, fast.model());
+        assertFalse(fast.thinking());
+
+        ModelRouter.Route hard = router.routeThinking("为什么报 NullPointerException", BotChatContext.ChatType.PRIVATE, FAST);
+        assertEquals(ModelTier.THINKING, hard.tier());
+        assertEquals(FAST, hard.model());
+        assertTrue(hard.thinking());
+    }
+
+    @Test
+    void disabledRoutingKeepsBaseModel() {
+        config.setEnabled(false);
+        ModelRouter.Route route = router.route("为什么报 NullPointerException", BotChatContext.ChatType.GROUP, BASE);
+        assertEquals(ModelTier.STANDARD, route.tier());
+        assertEquals(BASE, route.model());
+    }
+
+    private ModelTier tier(String prompt, BotChatContext.ChatType chatType) {
+        return router.route(prompt, chatType, BASE).tier();
+    }
+}
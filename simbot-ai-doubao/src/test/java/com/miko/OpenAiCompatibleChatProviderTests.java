@@ -0,0 +1,142 @@
+package com.miko;
+
+import com.miko.exception.ApiException;
+import com.miko.provider.OpenAiCompatibleChatProvider;
+import com.miko.routing.ModelTier;
+import com.sun.net.httpserver.HttpServer;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessageRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * OpenAI 兼容服务商测试，使用本地桩服务模拟 /chat/completions 的 SSE 流
+ */
+class OpenAiCompatibleChatProviderTests {
+
+    private static final List<ChatMessage> MESSAGES = List.of(
+            ChatMessage.builder().role(ChatMessageRole.SYSTEM).content("你是猫娘").build(),
+            ChatMessage.builder().role(ChatMessageRole.USER).content("你好").build());
+
+    private HttpServer server;
+    private final AtomicReference<String> requestBody = new AtomicReference<>();
+    private volatile int status = 200;
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            requestBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            String body = status == 200
+                    ? """
+                    data: {"choices":[{"delta":{"role":"assistant"}}]}
+
+                    data: {"choices":[{"delta":{"content":"你好"}}]}
+
+                    data: {"choices":[{"delta":{"content":"喵~"}}]}
+
+                    data: [DONE]
+
+                    """
+                    : "{\"error\":{\"message\":\"overloaded\"}}";
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", status == 200 ? "text/event-stream" : "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        // 发出第一段正文后停止响应，直到测试结束
+        server.createContext("/stall/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("data: {\"choices\":[{\"delta\":{\"content\":\"你好\"}}]}\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                stalled.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        stalled.countDown();
+        server.stop(0);
+    }
+
+    private OpenAiCompatibleChatProvider provider() {
+        return new OpenAiCompatibleChatProvider("stub", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/",
+                "sk-test", "stub-chat", "stub-flash", Duration.ofSeconds(2), Duration.ofSeconds(2));
+    }
+
+    @Test
+    void streamsContent() {
+        OpenAiCompatibleChatProvider provider = provider();
+        List<String> chunks = provider.stream("stub-chat", MESSAGES, false).toList().blockingGet();
+
+        assertEquals(List.of("你好", "喵~"), chunks);
+        assertTrue(requestBody.get().contains("\"model\":\"stub-chat\""));
+        assertTrue(requestBody.get().contains("\"stream\":true"));
+        assertTrue(requestBody.get().contains("\"role\":\"system\""));
+    }
+
+    @Test
+    void resolvesFastModel() {
+        OpenAiCompatibleChatProvider provider = provider();
+
+        assertEquals("stub-flash", provider.resolveModel(ModelTier.FAST, "doubao-seed"));
+        assertEquals("stub-chat", provider.resolveModel(ModelTier.THINKING, "doubao-seed"));
+    }
+
+    // 正文停滞超过 read-timeout 时以超时失败，不会一直阻塞调用方
+    @Test
+    void stalledBodyTimesOut() {
+        OpenAiCompatibleChatProvider provider = new OpenAiCompatibleChatProvider("stub",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/stall/", "sk-test", "stub-chat", "stub-flash",
+                Duration.ofSeconds(2), Duration.ofMillis(300));
+        List<String> chunks = new ArrayList<>();
+
+        long start = System.nanoTime();
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> provider.stream("stub-chat", MESSAGES, false).blockingForEach(chunks::add));
+        assertTrue(e.getCause() instanceof HttpTimeoutException);
+        assertEquals(List.of("你好"), chunks);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(3)) < 0);
+        provider.close();
+    }
+
+    @Test
+    void httpErrorCarriesStatus() {
+        status = 503;
+        OpenAiCompatibleChatProvider provider = provider();
+
+        ApiException e = assertThrows(ApiException.class,
+                () -> provider.stream("stub-chat", MESSAGES, false).toList().blockingGet());
+        assertEquals(503, e.getCode());
+    }
+}
@@ -0,0 +1,136 @@
+package com.miko;
+
+import com.miko.admission.QuotaLimiter;
+import com.miko.config.AiQuotaConfig;
+import com.miko.entity.BotChatContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 调用配额测试：令牌桶的突发与补充、多级桶的退回、亲密等级取值
+ */
+class QuotaLimiterTests {
+
+    private static final BotChatContext.ChatType GROUP = BotChatContext.ChatType.GROUP;
+    private static final BotChatContext.ChatType PRIVATE = BotChatContext.ChatType.PRIVATE;
+    private static final AiQuotaConfig.Bucket UNLIMITED = new AiQuotaConfig.Bucket(0, 0);
+
+    private AiQuotaConfig config;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        config = new AiQuotaConfig();
+        // 每分钟60次即每秒补充一个令牌，测试期间不会自然补充
+        config.setUserLevels(List.of(new AiQuotaConfig.Bucket(60, 2)));
+        config.setGroup(UNLIMITED);
+        config.setGlobal(UNLIMITED);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void allowsBurstThenRejects() {
+        config.setUserLevels(List.of(new AiQuotaConfig.Bucket(60, 3)));
+        QuotaLimiter limiter = limiter();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(PRIVATE, "1", "1", 0));
+        }
+        assertFalse(limiter.tryAcquire(PRIVATE, "1", "1", 0));
+        assertEquals(1, rejected("user"));
+        // 其他用户的桶互不影响
+        assertTrue(limiter.tryAcquire(PRIVATE, "2", "2", 0));
+    }
+
+    @Test
+    void refillsAfterOneInterval() throws InterruptedException {
+        // 每分钟300次，每200ms补充一个令牌
+        config.setUserLevels(List.of(new AiQuotaConfig.Bucket(300, 1)));
+        QuotaLimiter limiter = limiter();
+
+        assertTrue(limiter.tryAcquire(PRIVATE, "1", "1", 0));
+        assertFalse(limiter.tryAcquire(PRIVATE, "1", "1", 0));
+        Thread.sleep(250);
+        assertTrue(limiter.tryAcquire(PRIVATE, "1", "1", 0));
+        assertFalse(limiter.tryAcquire(PRIVATE, "1", "1", 0));
+    }
+
+    // 群配额不足时退回已占用的用户令牌
+    @Test
+    void groupRejectionRefundsUser() {
+        config.setGroup(new AiQuotaConfig.Bucket(60, 1));
+        QuotaLimiter limiter = limiter();
+
+        assertTrue(limiter.tryAcquire(GROUP, "100", "1", 0));
+        assertFalse(limiter.tryAcquire(GROUP, "100", "1", 0));
+        assertEquals(1, rejected("group"));
+        // 用户仍剩一个令牌
+        assertTrue(limiter.tryAcquire(GROUP, "200", "1", 0));
+        assertFalse(limiter.tryAcquire(GROUP, "300", "1", 0));
+        assertEquals(1, rejected("user"));
+    }
+
+    // 全局配额不足时退回已占用的用户和群令牌
+    @Test
+    void globalRejectionRefundsUserAndGroup() {
+        config.setGroup(new AiQuotaConfig.Bucket(60, 2));
+        config.setGlobal(new AiQuotaConfig.Bucket(60, 1));
+        QuotaLimiter limiter = limiter();
+
+        assertTrue(limiter.tryAcquire(PRIVATE, "1", "1", 0));
+        assertFalse(limiter.tryAcquire(GROUP, "100", "2", 0));
+        assertEquals(1, rejected("global"));
+
+        // 放开全局配额后，用户和群的令牌都还是满的
+        config.setGlobal(UNLIMITED);
+        assertTrue(limiter.tryAcquire(GROUP, "100", "2", 0));
+        assertTrue(limiter.tryAcquire(GROUP, "100", "2", 0));
+        assertFalse(limiter.tryAcquire(GROUP, "100", "2", 0));
+    }
+
+    // 命中回复缓存后退回的正好是本轮占用的一个令牌
+    @Test
+    void refundRestoresExactlyOneToken() {
+        config.setGroup(new AiQuotaConfig.Bucket(60, 2));
+        QuotaLimiter limiter = limiter();
+
+        assertTrue(limiter.tryAcquire(GROUP, "100", "1", 0));
+        assertTrue(limiter.tryAcquire(GROUP, "100", "1", 0));
+        assertFalse(limiter.tryAcquire(GROUP, "100", "1", 0));
+
+        limiter.refund(GROUP, "100", "1", 0);
+        assertTrue(limiter.tryAcquire(GROUP, "100", "1", 0));
+        assertFalse(limiter.tryAcquire(GROUP, "100", "1", 0));
+    }
+
+    // 亲密等级超出列表时取最后一项，负数取第一项
+    @Test
+    void clampsIntimacyLevelToConfiguredLevels() {
+        config.setUserLevels(List.of(new AiQuotaConfig.Bucket(60, 1), new AiQuotaConfig.Bucket(60, 3)));
+        QuotaLimiter limiter = limiter();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(PRIVATE, "1", "1", 5));
+        }
+        assertFalse(limiter.tryAcquire(PRIVATE, "1", "1", 5));
+
+        assertTrue(limiter.tryAcquire(PRIVATE, "2", "2", -1));
+        assertFalse(limiter.tryAcquire(PRIVATE, "2", "2", -1));
+    }
+
+    private QuotaLimiter limiter() {
+        return new QuotaLimiter(config, meterRegistry);
+    }
+
+    private double rejected(String scope) {
+        return meterRegistry.get("ai.quota.rejected").tag("scope", scope).counter().count();
+    }
+}
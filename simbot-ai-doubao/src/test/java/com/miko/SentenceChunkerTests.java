@@ -0,0 +1,92 @@
+package com.miko;
+
+import com.miko.stream.SentenceChunker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按句切分测试：短句合并、超长强制切分、收尾引号跟随、换行边界和结束时补发
+ */
+class SentenceChunkerTests {
+
+    private final List<String> chunks = new ArrayList<>();
+
+    @Test
+    void shortSentenceMergesWithNext() {
+        SentenceChunker chunker = new SentenceChunker(4, 20, chunks::add);
+        chunker.append("好。");
+        assertEquals(List.of(), chunks);
+
+        // 句末标点是缓冲的最后一个字符时，等下一段确认后面没有更多标点再切
+        chunker.append("今天天气不错。");
+        assertEquals(List.of(), chunks);
+        chunker.append("走");
+        assertEquals(List.of("好。今天天气不错。"), chunks);
+    }
+
+    @Test
+    void longTextWithoutBoundaryIsCutAtMax() {
+        SentenceChunker chunker = new SentenceChunker(4, 10, chunks::add);
+        chunker.append("一二三四五六七八九十十一十二");
+        assertEquals(List.of("一二三四五六七八九十"), chunks);
+
+        chunker.finish();
+        assertEquals(List.of("一二三四五六七八九十", "十一十二"), chunks);
+    }
+
+    @Test
+    void longTextPrefersCommaCut() {
+        SentenceChunker chunker = new SentenceChunker(4, 10, chunks::add);
+        chunker.append("一二三四五，六七八九十一");
+        assertEquals(List.of("一二三四五，"), chunks);
+    }
+
+    @Test
+    void closingQuoteStaysWithSentence() {
+        SentenceChunker chunker = new SentenceChunker(4, 20, chunks::add);
+        chunker.append("她说：「走吧。");
+        assertEquals(List.of(), chunks);
+
+        chunker.append("」然后");
+        assertEquals(List.of("她说：「走吧。」"), chunks);
+
+        chunker.append("就走了？！好");
+        assertEquals(List.of("她说：「走吧。」", "然后就走了？！"), chunks);
+    }
+
+    @Test
+    void newlineIsBoundary() {
+        SentenceChunker chunker = new SentenceChunker(4, 20, chunks::add);
+        chunker.append("第一行内容\n第二行内容\n");
+        assertEquals(List.of("第一行内容"), chunks);
+
+        chunker.finish();
+        assertEquals(List.of("第一行内容", "第二行内容"), chunks);
+    }
+
+    @Test
+    void finishFlushesRemainder() {
+        SentenceChunker chunker = new SentenceChunker(4, 20, chunks::add);
+        chunker.append("嗯");
+        assertFalse(chunker.hasEmitted());
+
+        chunker.finish();
+        assertEquals(List.of("嗯"), chunks);
+        assertTrue(chunker.hasEmitted());
+    }
+
+    @Test
+    void blankRemainderIsNotEmitted() {
+        SentenceChunker chunker = new SentenceChunker(4, 20, chunks::add);
+        chunker.append("  \n ");
+        chunker.finish();
+        assertEquals(List.of(), chunks);
+        assertFalse(chunker.hasEmitted());
+    }
+}
@@ -0,0 +1,216 @@
+package com.miko.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miko.config.BotCacheConfig;
+import com.miko.entity.napcat.request.GetGroupMemberListRequest;
+import com.miko.entity.napcat.response.GetGroupMemberListResponse;
+import com.miko.service.NapCatApiService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import love.forte.simbot.common.id.ID;
+import love.forte.simbot.component.onebot.v11.core.actor.OneBotMember;
+import love.forte.simbot.component.onebot.v11.core.event.message.OneBotGroupMessageEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 群成员名录
+ * <p>
+ * 按群缓存成员的群名片/昵称，供日志和消息整合（@某人）使用，避免每条群消息都调用 getMember 接口。
+ * 每个群首次使用时在后台通过 get_group_member_list 批量拉取一次，加载完成前名录中没有的成员直接显示QQ号，
+ * 不阻塞事件线程；之后由群消息的发送者信息、群成员变动和管理员变动事件持续更新，超过 TTL 后在后台刷新，
+ * 刷新期间继续使用旧数据。事件线程上通过 {@link #findDisplayName} 查询，名录中没有的成员在后台单独查询。名录最多保留 max-groups 个群，超过 idle-expiry 未使用的群会被回收。
+ * </p>
+ */
+@Slf4j
+@Component
+public class GroupMemberDirectory {
+
+    private final NapCatApiService napCatApiService;
+    private final BotCacheConfig.Member config;
+    private final Cache<String, GroupMembers> groups;
+
+    private final Counter bulkLoadCounter;
+    private final Counter singleLoadCounter;
+
+    public GroupMemberDirectory(NapCatApiService napCatApiService, BotCacheConfig config, MeterRegistry meterRegistry) {
+        this.napCatApiService = napCatApiService;
+        this.config = config.getMember();
+        this.groups = Caffeine.newBuilder()
+                .maximumSize(this.config.getMaxGroups())
+                .expireAfterAccess(this.config.getIdleExpiry())
+                .build();
+        Gauge.builder("bot.member.directory.groups", groups, Cache::estimatedSize)
+                .description("已缓存成员名录的群数量")
+                .register(meterRegistry);
+        this.bulkLoadCounter = Counter.builder("bot.member.directory.load")
+                .description("群成员名录的接口调用次数")
+                .tag("type", "bulk")
+                .register(meterRegistry);
+        this.singleLoadCounter = Counter.builder("bot.member.directory.load")
+                .description("群成员名录的接口调用次数")
+                .tag("type", "single")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录群消息发送者的最新名片/昵称，并返回其显示名
+     */
+    public String observe(OneBotGroupMessageEvent event) {
+        var sender = event.getSourceEvent().getSender();
+        String groupId = event.getSourceEvent().getGroupId().toString();
+        String userId = event.getAuthorId().toString();
+        GroupMembers members = group(groupId);
+        members.put(userId, sender.getCard(), sender.getNickname());
+        return members.displayName(userId);
+    }
+
+    /**
+     * 获取群成员显示名（群名片优先，其次昵称），不阻塞调用线程，可在事件线程上调用
+     *
+     * @param event    群消息事件，名录中没有该成员时用于在后台单独查询
+     * @param memberId 成员QQ号
+     * @return 显示名；名录中没有时返回null，名录加载完成后在后台查询该成员并写入名录
+     */
+    public String findDisplayName(OneBotGroupMessageEvent event, ID memberId) {
+        String groupId = event.getSourceEvent().getGroupId().toString();
+        String userId = memberId.toString();
+        GroupMembers members = group(groupId);
+        String name = members.displayName(userId);
+        if (name == null && members.loadedAt != 0 && members.pending.add(userId)) {
+            // 名录中没有（如刚入群且尚未刷新）：在后台单独查询一次，同一成员同时只查询一次
+            Thread.ofVirtual().name("member-lookup-" + groupId).start(() -> {
+                try {
+                    lookup(event, memberId, members);
+                } finally {
+                    members.pending.remove(userId);
+                }
+            });
+        }
+        return name;
+    }
+
+    /**
+     * 获取群成员显示名（群名片优先，其次昵称），名录中没有时同步查询一次
+     * <p>会调用 getMember 接口，只能在调度器的虚拟线程上调用，不能在事件线程上调用</p>
+     *
+     * @param event    群消息事件，名录中没有该成员时用于单独查询
+     * @param memberId 成员QQ号
+     * @return 显示名，查询不到或名录尚在首次加载时返回QQ号
+     */
+    public String displayName(OneBotGroupMessageEvent event, ID memberId) {
+        String groupId = event.getSourceEvent().getGroupId().toString();
+        String userId = memberId.toString();
+        GroupMembers members = group(groupId);
+        String name = members.displayName(userId);
+        if (name != null) {
+            return name;
+        }
+        if (members.loadedAt == 0) {
+            // 名录尚在首次加载，不再单独查询
+            return userId;
+        }
+        name = lookup(event, memberId, members);
+        return name == null ? userId : name;
+    }
+
+    /**
+     * 群成员或管理员发生变动，在后台重新拉取该群的成员列表
+     */
+    public void refresh(String groupId) {
+        GroupMembers members = groups.getIfPresent(groupId);
+        if (members != null) {
+            refreshAsync(groupId, members);
+        }
+    }
+
+    private GroupMembers group(String groupId) {
+        GroupMembers members = groups.get(groupId, _ -> new GroupMembers());
+        // 首次使用或已过期：在后台批量拉取，同一群同时只拉取一次
+        if (members.loadedAt == 0 || System.currentTimeMillis() - members.loadedAt > config.getTtl().toMillis()) {
+            refreshAsync(groupId, members);
+        }
+        return members;
+    }
+
+    private void refreshAsync(String groupId, GroupMembers members) {
+        if (members.refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("member-directory-" + groupId).start(() -> {
+                try {
+                    load(groupId, members);
+                } finally {
+                    members.refreshing.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 单独查询一个成员并写入名录
+     */
+    private String lookup(OneBotGroupMessageEvent event, ID memberId, GroupMembers members) {
+        singleLoadCounter.increment();
+        try {
+            OneBotMember member = event.getContent().getMember(memberId);
+            if (member == null) {
+                return null;
+            }
+            members.put(memberId.toString(), member.getNick(), member.getName());
+            return members.displayName(memberId.toString());
+        } catch (Exception e) {
+            log.warn("查询群成员[{}]失败：{}", memberId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void load(String groupId, GroupMembers members) {
+        bulkLoadCounter.increment();
+        try {
+            GetGroupMemberListResponse response = napCatApiService.getGroupMemberList(
+                    new GetGroupMemberListRequest().setGroupId(groupId).setNoCache(true));
+            if (response != null && response.getData() != null) {
+                // 整体替换，已退群的成员随之移除
+                GroupMembers loaded = new GroupMembers();
+                response.getData().forEach(m -> loaded.put(String.valueOf(m.getUser_id()), m.getCard(), m.getNickname()));
+                members.names = loaded.names;
+                log.debug("群[{}]成员名录已加载，共{}人", groupId, response.getData().size());
+            }
+        } catch (Exception e) {
+            log.warn("群[{}]成员名录加载失败，稍后重试：{}", groupId, e.getMessage());
+        } finally {
+            // 失败也记录时间，避免接口异常时每条消息都重新拉取
+            members.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 单个群的成员名录
+     */
+    private static final class GroupMembers {
+        private volatile Map<String, String> names = new ConcurrentHashMap<>();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        /**
+         * 正在后台单独查询的成员
+         */
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private volatile long loadedAt;
+
+        private void put(String userId, String card, String nickname) {
+            String name = card != null && !card.isEmpty() ? card : nickname;
+            if (name != null && !name.isEmpty()) {
+                names.put(userId, name);
+            }
+        }
+
+        private String displayName(String userId) {
+            return names.get(userId);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.miko.cache;
+
+/**
+ * 近期消息缓冲中的一条消息
+ *
+ * @param messageId    消息ID
+ * @param conversation 会话key（对话类型+群聊ID/好友ID）
+ * @param sender       发送者显示名
+ * @param text         整合后的消息内容
+ */
+public record RecentMessage(String messageId, String conversation, String sender, String text) {
+}
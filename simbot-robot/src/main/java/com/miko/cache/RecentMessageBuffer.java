@@ -0,0 +1,131 @@
+package com.miko.cache;
+
+import com.miko.config.BotCacheConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 近期消息缓冲
+ * <p>
+ * 每个会话一个定长环形缓冲，记录最近收到和发出的消息；另有一个按消息ID的全局索引，
+ * 引用回复和撤回事件可以O(1)取回原消息，不必调用 get_msg 接口。
+ * </p>
+ * <p>
+ * 内存有上限：每个会话最多保留 per-conversation 条，会话数超过 max-conversations 时
+ * 淘汰最久未活跃的会话，单条消息截断到 max-text-length 个字符。
+ * </p>
+ */
+@Component
+public class RecentMessageBuffer {
+
+    private final BotCacheConfig.Message config;
+    private final Map<String, RecentMessage> index = new ConcurrentHashMap<>();
+    /**
+     * 按活跃顺序排列的会话，写入时加锁；读取只走 index，不加锁
+     */
+    private final LinkedHashMap<String, Ring> conversations;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public RecentMessageBuffer(BotCacheConfig config, MeterRegistry meterRegistry) {
+        this.config = config.getMessage();
+        this.conversations = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ring> eldest) {
+                if (size() <= RecentMessageBuffer.this.config.getMaxConversations()) {
+                    return false;
+                }
+                eldest.getValue().evictAll();
+                return true;
+            }
+        };
+        Gauge.builder("bot.message.buffer.size", index, Map::size)
+                .description("近期消息缓冲中的消息数")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("bot.message.buffer.lookup")
+                .description("近期消息缓冲的查询次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("bot.message.buffer.lookup")
+                .description("近期消息缓冲的查询次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一条消息
+     *
+     * @param conversation 会话key（对话类型+群聊ID/好友ID）
+     * @param messageId    消息ID
+     * @param sender       发送者显示名
+     * @param text         整合后的消息内容
+     * @return 写入缓冲的消息
+     */
+    public RecentMessage record(String conversation, String messageId, String sender, String text) {
+        if (messageId == null || text == null) {
+            return null;
+        }
+        if (text.length() > config.getMaxTextLength()) {
+            text = text.substring(0, config.getMaxTextLength()) + "…";
+        }
+        RecentMessage message = new RecentMessage(messageId, conversation, sender, text);
+        synchronized (conversations) {
+            Ring ring = conversations.computeIfAbsent(conversation, _ -> new Ring(config.getPerConversation()));
+            index.put(messageId, message);
+            ring.add(message);
+        }
+        return message;
+    }
+
+    /**
+     * 按消息ID查找
+     *
+     * @return 缓冲中的消息，未命中返回null
+     */
+    public RecentMessage find(String messageId) {
+        RecentMessage message = index.get(messageId);
+        (message != null ? hitCounter : missCounter).increment();
+        return message;
+    }
+
+    /**
+     * 会话的定长环形缓冲，写满后覆盖最早的消息并同步移出索引
+     * <p>同一消息ID被重新记录后索引指向新的实例，旧位置被覆盖时按实例比较，不会误删新记录</p>
+     */
+    private final class Ring {
+        private final RecentMessage[] messages;
+        private int next;
+
+        private Ring(int capacity) {
+            this.messages = new RecentMessage[Math.max(1, capacity)];
+        }
+
+        private void add(RecentMessage message) {
+            RecentMessage evicted = messages[next];
+            if (evicted != null) {
+                unindex(evicted);
+            }
+            messages[next] = message;
+            next = (next + 1) % messages.length;
+        }
+
+        private void evictAll() {
+            for (RecentMessage message : messages) {
+                if (message != null) {
+                    unindex(message);
+                }
+            }
+        }
+
+        private void unindex(RecentMessage message) {
+            index.computeIfPresent(message.messageId(), (_, current) -> current == message ? null : current);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.miko.command;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记一个命令处理方法，由 {@link CommandRegistry} 在启动时自动注册
+ * <p>
+ * 方法签名须为 {@code String xxx(CommandRequest request)}，返回值为回复内容，返回null表示不回复。
+ * </p>
+ * <pre>
+ * &#64;Command(value = {"/切换模型", "/changeModel"}, args = "(\\d+)")
+ * String modelSwitch(CommandRequest request) { ... }
+ * </pre>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Command {
+
+    /**
+     * 命令前缀，如 "/切换模型"，多个前缀互为别名
+     */
+    String[] value();
+
+    /**
+     * 前缀之后参数部分的正则，启动时预编译；为空表示命令必须与前缀完全一致
+     */
+    String args() default "";
+}
@@ -0,0 +1,176 @@
+package com.miko.command;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 命令注册表
+ * <p>
+ * 启动时扫描所有Bean中标注了 {@link Command} 的方法，把命令前缀放进前缀树，参数正则只编译一次。
+ * 分发时沿前缀树走一遍命令文本即可找到候选命令，耗时只与命令长度有关，与注册的命令数量无关；
+ * 多个前缀同时命中时（如 "/a" 和 "/ab"）优先尝试最长的前缀。
+ * </p>
+ * <p>
+ * 查找命令的耗时记入 command.dispatch 计时器（按是否命中打标签），不含命令本身的执行时间。
+ * </p>
+ */
+@Slf4j
+@Component
+public class CommandRegistry implements BeanPostProcessor {
+
+    private final Node root = new Node();
+    private final Supplier<Timer> foundTimer;
+    private final Supplier<Timer> unknownTimer;
+    private int size;
+
+    /**
+     * 后置处理器先于普通Bean创建，MeterRegistry 延迟到首次分发时再取，避免它被提前初始化而错过自定义配置
+     */
+    @Autowired
+    public CommandRegistry(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.foundTimer = SingletonSupplier.of(() -> dispatchTimer(meterRegistry.getObject(), "found"));
+        this.unknownTimer = SingletonSupplier.of(() -> dispatchTimer(meterRegistry.getObject(), "unknown"));
+    }
+
+    public CommandRegistry(MeterRegistry meterRegistry) {
+        this.foundTimer = SingletonSupplier.of(() -> dispatchTimer(meterRegistry, "found"));
+        this.unknownTimer = SingletonSupplier.of(() -> dispatchTimer(meterRegistry, "unknown"));
+    }
+
+    private static Timer dispatchTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("command.dispatch")
+                .description("按命令文本查找命令处理方法的耗时")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        Map<Method, Command> methods = MethodIntrospector.selectMethods(targetClass,
+                (MethodIntrospector.MetadataLookup<Command>) method -> AnnotatedElementUtils.findMergedAnnotation(method, Command.class));
+        methods.forEach((method, command) -> register(bean, AopUtils.selectInvocableMethod(method, bean.getClass()), command));
+        return bean;
+    }
+
+    /**
+     * 注册一个命令处理方法
+     *
+     * @throws IllegalStateException 方法签名不正确或命令前缀重复
+     */
+    public void register(Object bean, Method method, Command command) {
+        if (method.getReturnType() != String.class
+                || method.getParameterCount() != 1 || method.getParameterTypes()[0] != CommandRequest.class) {
+            throw new IllegalStateException("命令方法签名须为 String " + method.getName() + "(CommandRequest)：" + method);
+        }
+        ReflectionUtils.makeAccessible(method);
+        Pattern args = command.args().isEmpty() ? null : Pattern.compile(command.args());
+        for (String prefix : command.value()) {
+            if (prefix == null || prefix.isEmpty()) {
+                throw new IllegalStateException("命令前缀不能为空：" + method);
+            }
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), _ -> new Node());
+            }
+            if (node.handler != null) {
+                throw new IllegalStateException("命令前缀重复：" + prefix + "（" + node.handler.method + " / " + method + "）");
+            }
+            node.handler = new Handler(prefix, args, bean, method);
+            size++;
+            log.debug("注册命令：{} -> {}", prefix, method.getName());
+        }
+    }
+
+    /**
+     * 分发命令
+     *
+     * @param uid  发送者QQ号
+     * @param text 命令文本
+     * @return 回复内容；未知命令或命令无需回复时返回null
+     */
+    public String dispatch(String uid, String text) {
+        long start = System.nanoTime();
+        List<Handler> candidates = new ArrayList<>(2);
+        Node node = root;
+        for (int i = 0; i < text.length(); i++) {
+            node = node.children.get(text.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.handler != null) {
+                candidates.add(node.handler);
+            }
+        }
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Handler handler = candidates.get(i);
+            Matcher matcher = handler.match(text);
+            if (matcher != null || handler.args == null && text.length() == handler.prefix.length()) {
+                CommandRequest request = new CommandRequest(uid, text, handler.prefix, matcher);
+                foundTimer.get().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return handler.invoke(request);
+            }
+        }
+        unknownTimer.get().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.debug("未知命令: {}", text);
+        return null;
+    }
+
+    /**
+     * 已注册的命令前缀数量
+     */
+    public int size() {
+        return size;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private Handler handler;
+    }
+
+    private record Handler(String prefix, Pattern args, Object bean, Method method) {
+
+        /**
+         * 匹配前缀之后的参数部分，无参数命令或不匹配时返回null
+         */
+        private Matcher match(String text) {
+            if (args == null) {
+                return null;
+            }
+            Matcher matcher = args.matcher(text).region(prefix.length(), text.length());
+            return matcher.matches() ? matcher : null;
+        }
+
+        private String invoke(CommandRequest request) {
+            try {
+                return (String) method.invoke(bean, request);
+            } catch (InvocationTargetException e) {
+                log.error("命令执行失败：{}", request.text(), e.getTargetException());
+                return "❌ 命令执行失败！原因：" + e.getTargetException().getMessage();
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.miko.command;
+
+import java.util.regex.Matcher;
+
+/**
+ * 一次命令调用的上下文
+ *
+ * @param uid     发送者QQ号
+ * @param text    完整命令文本
+ * @param command 命中的命令前缀
+ * @param args    参数匹配结果，分组编号与 {@link Command#args()} 中一致；无参数命令为null
+ */
+public record CommandRequest(String uid, String text, String command, Matcher args) {
+
+    /**
+     * 取参数分组，解析失败返回null
+     */
+    public String group(int group) {
+        return args == null ? null : args.group(group);
+    }
+}
@@ -0,0 +1,55 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * AI回复调度配置类
+ * 对应 application-robot.yml 中的 ai.dispatch 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.dispatch")
+public class AiDispatchConfig {
+
+    /**
+     * 同时执行的AI回复任务上限
+     */
+    private int maxConcurrency = 32;
+
+    /**
+     * 等待执行的AI回复任务上限，超出后直接拒绝
+     */
+    private int maxQueueSize = 256;
+
+    /**
+     * 连发消息合并配置
+     */
+    private Coalesce coalesce = new Coalesce();
+
+    @Data
+    public static class Coalesce {
+        /**
+         * 是否开启连发消息合并
+         */
+        private boolean enabled = true;
+
+        /**
+         * 私聊合并窗口，窗口内的连续消息合并为一轮对话
+         */
+        private Duration privateWindow = Duration.ofMillis(1500);
+
+        /**
+         * 群聊合并窗口
+         */
+        private Duration groupWindow = Duration.ofMillis(3000);
+
+        /**
+         * 单个窗口最多合并的消息数，达到后立即发送
+         */
+        private int maxMessages = 5;
+    }
+}
@@ -0,0 +1,81 @@
+package com.miko.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 机器人本地缓存配置类
+ * 对应 application-robot.yml 中的 bot.cache 配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "bot.cache")
+public class BotCacheConfig {
+
+    /**
+     * 群成员名录配置
+     */
+    private Member member = new Member();
+
+    /**
+     * 近期消息缓冲配置
+     */
+    private Message message = new Message();
+
+    /**
+     * 重复事件过滤配置
+     */
+    private Dedup dedup = new Dedup();
+
+    @Data
+    public static class Member {
+        /**
+         * 群成员列表的有效期，过期后在后台重新拉取，期间继续使用旧数据
+         */
+        private Duration ttl = Duration.ofMinutes(30);
+
+        /**
+         * 最多缓存名录的群数，超出后淘汰最久未活跃的群
+         */
+        private int maxGroups = 2000;
+
+        /**
+         * 群名录在多长时间没有使用后回收
+         */
+        private Duration idleExpiry = Duration.ofHours(6);
+    }
+
+    @Data
+    public static class Message {
+        /**
+         * 每个会话保留的最近消息条数
+         */
+        private int perConversation = 50;
+
+        /**
+         * 最多保留的会话数，超出后淘汰最久未活跃的会话
+         */
+        private int maxConversations = 2000;
+
+        /**
+         * 单条消息保留的最大字符数
+         */
+        private int maxTextLength = 300;
+    }
+
+    @Data
+    public static class Dedup {
+        /**
+         * 去重时间窗口，同一消息在窗口内（最长两个窗口）重复投递会被丢弃
+         */
+        private Duration window = Duration.ofMinutes(2);
+
+        /**
+         * 每个窗口最多记录的消息数，超出后提前切换窗口，保证内存有上限
+         */
+        private int maxEntries = 50000;
+    }
+}
@@ -0,0 +1,211 @@
+package com.miko.dispatch;
+
+import com.miko.admission.DegradationLadder;
+import com.miko.admission.DegradationLevel;
+import com.miko.config.AiDispatchConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AI回复调度器
+ * <p>
+ * 监听器只负责受理事件并入队，数据库查询、豆包API调用和回复发送都在虚拟线程中执行，
+ * 避免一次慢调用阻塞simbot的事件分发线程。并发数和排队数由 {@link AiDispatchConfig} 控制。
+ * </p>
+ * <p>
+ * 每个会话（key = 对话类型+群聊ID/好友ID）拥有一个邮箱：同一会话的任务按提交顺序逐个执行，
+ * 保证 previousResponseId 链和历史消息不会被并发修改；不同会话之间完全并行。邮箱排空后立即回收。
+ * </p>
+ * <p>
+ * 等待并发许可的任务数与并发上限之比驱动 {@link DegradationLadder}：比值为1表示新任务要多等一整轮AI调用，
+ * 压力上升时逐级关闭深度思考、切换快速模型，
+ * 达到繁忙等级或队列已满时直接拒绝新任务，由调用方回复繁忙提示。
+ * 排在同一邮箱里的后续任务只说明这个会话消息多，并不占用许可，不计入降级，单独以邮箱积压指标暴露。
+ * </p>
+ */
+@Slf4j
+@Component
+public class AiDispatcher {
+
+    private final AiDispatchConfig config;
+    private final DegradationLadder degradationLadder;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ai-dispatch-", 0).factory());
+    private final Semaphore permits;
+    /**
+     * 并发上限，降级阶梯按等待许可的任务数与它的比值判断压力
+     */
+    private final int maxConcurrency;
+    private final AtomicInteger queued = new AtomicInteger();
+    /**
+     * 已轮到执行、正在等待并发许可的任务数，每个邮箱至多一个
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final DistributionSummary mailboxBacklog;
+    private final Timer waitTimer;
+    private final Timer executeTimer;
+    private final Counter shedBusyCounter;
+    private final Counter shedQueueFullCounter;
+
+    public AiDispatcher(AiDispatchConfig config, DegradationLadder degradationLadder, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.degradationLadder = degradationLadder;
+        this.maxConcurrency = Math.max(1, config.getMaxConcurrency());
+        this.permits = new Semaphore(maxConcurrency, true);
+
+        Gauge.builder("ai.dispatch.queue.depth", queued, AtomicInteger::get)
+                .description("等待执行的AI回复任务数")
+                .register(meterRegistry);
+        Gauge.builder("ai.dispatch.permit.waiting", waiting, AtomicInteger::get)
+                .description("等待并发许可的AI回复任务数")
+                .register(meterRegistry);
+        Gauge.builder("ai.dispatch.running", running, AtomicInteger::get)
+                .description("正在执行的AI回复任务数")
+                .register(meterRegistry);
+        Gauge.builder("ai.dispatch.mailboxes", mailboxes, Map::size)
+                .description("当前有待处理任务的会话数")
+                .register(meterRegistry);
+        this.mailboxBacklog = DistributionSummary.builder("ai.dispatch.mailbox.backlog")
+                .description("任务入队时所在会话邮箱的积压任务数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("ai.dispatch.wait")
+                .description("AI回复任务从入队到开始执行的等待时间")
+                .register(meterRegistry);
+        this.executeTimer = Timer.builder("ai.dispatch.execution")
+                .description("AI回复任务的执行耗时")
+                .register(meterRegistry);
+        this.shedBusyCounter = Counter.builder("ai.admission.shed")
+                .description("被拒绝的AI回复任务数")
+                .tag("reason", "busy")
+                .register(meterRegistry);
+        this.shedQueueFullCounter = Counter.builder("ai.admission.shed")
+                .description("被拒绝的AI回复任务数")
+                .tag("reason", "queue_full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交AI回复任务
+     *
+     * @param key  会话key（对话类型+群聊ID/好友ID），同一key的任务串行执行
+     * @param task 回复任务
+     * @return 是否受理，繁忙或队列已满时返回false
+     */
+    public boolean dispatch(String key, Runnable task) {
+        int depth = queued.incrementAndGet();
+        if (depth > config.getMaxQueueSize()) {
+            queued.decrementAndGet();
+            shedQueueFullCounter.increment();
+            log.warn("AI回复队列已满（上限{}），拒绝会话[{}]的新任务", config.getMaxQueueSize(), key);
+            return false;
+        }
+        if (degradationLadder.update(waiting.get(), maxConcurrency) == DegradationLevel.BUSY) {
+            queued.decrementAndGet();
+            shedBusyCounter.increment();
+            log.warn("AI服务繁忙（{}个任务等待许可），拒绝会话[{}]的新任务", waiting.get(), key);
+            return false;
+        }
+        long enqueuedAt = System.nanoTime();
+        Runnable timedTask = () -> run(task, enqueuedAt);
+        // compute 保证入队和"是否需要启动消费"的判断对同一会话是原子的
+        boolean[] startDraining = new boolean[1];
+        mailboxes.compute(key, (_, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox();
+                startDraining[0] = true;
+            }
+            mailbox.tasks.add(timedTask);
+            mailboxBacklog.record(mailbox.tasks.size());
+            return mailbox;
+        });
+        if (startDraining[0]) {
+            executor.execute(() -> drain(key));
+        }
+        return true;
+    }
+
+    /**
+     * 逐个执行会话邮箱中的任务，邮箱排空时回收
+     */
+    private void drain(String key) {
+        Runnable next;
+        while ((next = poll(key)) != null) {
+            next.run();
+        }
+    }
+
+    private Runnable poll(String key) {
+        Runnable[] next = new Runnable[1];
+        mailboxes.computeIfPresent(key, (_, mailbox) -> {
+            next[0] = mailbox.tasks.poll();
+            // 邮箱已排空：直接移除，下一条消息到来时重新创建并启动消费
+            return next[0] == null ? null : mailbox;
+        });
+        return next[0];
+    }
+
+    private void run(Runnable task, long enqueuedAt) {
+        degradationLadder.update(waiting.incrementAndGet(), maxConcurrency);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            waiting.decrementAndGet();
+            queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        degradationLadder.update(waiting.decrementAndGet(), maxConcurrency);
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+        try {
+            executeTimer.record(task);
+        } catch (Exception e) {
+            log.error("AI回复任务执行异常", e);
+        } finally {
+            running.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("AI回复调度器已关闭");
+    }
+
+    /**
+     * 会话邮箱，仅在 ConcurrentHashMap.compute 中访问，无需额外加锁
+     * <p>邮箱存在即表示有一个消费线程正在处理它，排空时由消费线程移除</p>
+     */
+    private static final class Mailbox {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+    }
+}
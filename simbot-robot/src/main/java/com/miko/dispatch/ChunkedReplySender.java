@@ -0,0 +1,90 @@
+package com.miko.dispatch;
+
+import com.miko.config.AiStreamConfig;
+import com.miko.entity.BotChatContext;
+import com.miko.metrics.ListenerMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import love.forte.simbot.component.onebot.v11.core.event.message.OneBotMessageEvent;
+import love.forte.simbot.message.MessageReceipt;
+import org.springframework.stereotype.Component;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 分条回复发送器
+ * <p>
+ * 流式回复时模型每切出一句就交给这里发送。发送在 {@link AiDispatcher} 的虚拟线程上同步进行：
+ * 等上一条发送完成再发下一条，保证顺序；相邻两条至少间隔 ai.stream.interval，避免刷屏和触发风控。
+ * 第一条发出时记录本轮的首条消息耗时。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChunkedReplySender {
+
+    private final AiStreamConfig aiStreamConfig;
+    private final ListenerMetrics listenerMetrics;
+
+    /**
+     * 开始一轮分条回复
+     *
+     * @param event    要回复的事件
+     * @param chatType 对话类型
+     * @param onSent   每条发送成功后回调（回执, 内容）
+     * @return 接收分句的回调，每次调用发送一条消息
+     */
+    public Consumer<String> open(OneBotMessageEvent event, BotChatContext.ChatType chatType,
+                                 BiConsumer<MessageReceipt, String> onSent) {
+        return new Session(event, chatType, onSent, System.nanoTime());
+    }
+
+    private final class Session implements Consumer<String> {
+        private final OneBotMessageEvent event;
+        private final BotChatContext.ChatType chatType;
+        private final BiConsumer<MessageReceipt, String> onSent;
+        private final long startedAt;
+        private long lastSentAt;
+        private int sent;
+
+        private Session(OneBotMessageEvent event, BotChatContext.ChatType chatType,
+                        BiConsumer<MessageReceipt, String> onSent, long startedAt) {
+            this.event = event;
+            this.chatType = chatType;
+            this.onSent = onSent;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public void accept(String chunk) {
+            if (sent > 0) {
+                pace();
+            }
+            try {
+                MessageReceipt receipt = event.replyAsync(chunk).join();
+                lastSentAt = System.nanoTime();
+                if (sent++ == 0) {
+                    listenerMetrics.recordFirstChunk(chatType, lastSentAt - startedAt);
+                }
+                onSent.accept(receipt, chunk);
+            } catch (Exception e) {
+                // 单条发送失败不中断整轮回复，后续句子继续发送
+                log.warn("分条回复发送失败 事件:{} 内容:{}", event.getId(), chunk, e);
+            }
+        }
+
+        private void pace() {
+            long waitNanos = lastSentAt + aiStreamConfig.getInterval().toNanos() - System.nanoTime();
+            if (waitNanos <= 0) {
+                return;
+            }
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
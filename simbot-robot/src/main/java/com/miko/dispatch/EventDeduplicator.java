@@ -0,0 +1,70 @@
+package com.miko.dispatch;
+
+import com.miko.config.BotCacheConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 重复事件过滤器
+ * <p>
+ * NapCat WebSocket 重连或同时开启 HTTP/WS 上报时，同一 message_id 可能被投递多次。
+ * 这里用两代轮换的集合记录最近见过的 (self_id, message_id)：写入当前代，查询当前代和上一代；
+ * 窗口到期或当前代写满时，丢弃上一代、当前代变为上一代。内存最多为两代的容量。
+ * </p>
+ */
+@Slf4j
+@Component
+public class EventDeduplicator {
+
+    private final BotCacheConfig.Dedup config;
+    private final Counter duplicateCounter;
+
+    private volatile Set<String> current = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> previous = ConcurrentHashMap.newKeySet();
+    private volatile long rotatedAt = System.currentTimeMillis();
+
+    public EventDeduplicator(BotCacheConfig config, MeterRegistry meterRegistry) {
+        this.config = config.getDedup();
+        this.duplicateCounter = Counter.builder("simbot.event.duplicate")
+                .description("被丢弃的重复投递事件数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一条消息，并判断是否首次出现
+     *
+     * @param selfId    机器人QQ号
+     * @param messageId 消息ID
+     * @return 首次出现返回true，重复投递返回false
+     */
+    public boolean firstSeen(String selfId, String messageId) {
+        rotateIfNeeded();
+        String key = selfId + ':' + messageId;
+        if (previous.contains(key) || !current.add(key)) {
+            duplicateCounter.increment();
+            log.info("丢弃重复投递的消息 self_id:{} message_id:{}", selfId, messageId);
+            return false;
+        }
+        return true;
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - rotatedAt < config.getWindow().toMillis() && current.size() < config.getMaxEntries()) {
+            return;
+        }
+        synchronized (this) {
+            if (now - rotatedAt < config.getWindow().toMillis() && current.size() < config.getMaxEntries()) {
+                return;
+            }
+            previous = current;
+            current = ConcurrentHashMap.newKeySet();
+            rotatedAt = now;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.miko.dispatch;
+
+import com.miko.config.AiDispatchConfig;
+import com.miko.entity.BotChatContext;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 连发消息合并器
+ * <p>
+ * 用户常常连续发好几条短消息，群里也经常几秒内连着@好几次。合并窗口内同一批次key的消息会攒成一批，
+ * 窗口结束或达到条数上限时一次性回调，由调用方合并为一轮AI对话，避免每条消息都调用一次豆包API。
+ * </p>
+ * <p>
+ * 所有批次都在同一个调度线程上触发，因此同一会话的批次按先后顺序交给 {@link AiDispatcher}。
+ * 不参与合并的消息（如私聊指令）通过 {@link #flushThen} 先发送该key等待中的批次，再在同一线程上处理，不会排到之前的消息前面。
+ * </p>
+ */
+@Slf4j
+@Component
+public class MessageCoalescer {
+
+    private final AiDispatchConfig.Coalesce config;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("ai-coalesce").daemon().factory());
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSize;
+
+    public MessageCoalescer(AiDispatchConfig config, MeterRegistry meterRegistry) {
+        this.config = config.getCoalesce();
+        this.batchSize = DistributionSummary.builder("ai.coalesce.batch.size")
+                .description("每轮AI对话合并的消息条数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交一条消息
+     *
+     * @param key      批次key，同key的消息合并为一批（私聊为会话key，群聊为会话key+群友QQ号）
+     * @param chatType 对话类型，决定合并窗口长度
+     * @param message  消息
+     * @param flush    窗口结束或达到条数上限时，以整批消息（按到达顺序）回调；以批次第一条消息提交的回调为准
+     * @param <T>      消息类型
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void offer(String key, BotChatContext.ChatType chatType, T message, Consumer<List<T>> flush) {
+        Consumer<List<?>> callback = (Consumer<List<?>>) (Consumer<?>) flush;
+        Duration window = chatType == BotChatContext.ChatType.GROUP ? config.getGroupWindow() : config.getPrivateWindow();
+        if (!config.isEnabled() || window == null || window.isZero() || config.getMaxMessages() <= 1) {
+            fire(List.of(message), callback);
+            return;
+        }
+
+        Batch[] full = new Batch[1];
+        batches.compute(key, (_, batch) -> {
+            if (batch == null) {
+                Batch created = new Batch(callback);
+                created.timer = scheduler.schedule(() -> flushOnTimeout(key, created), window.toMillis(), TimeUnit.MILLISECONDS);
+                batch = created;
+            }
+            batch.messages.add(message);
+            if (batch.messages.size() >= config.getMaxMessages()) {
+                // 达到条数上限：移出并提前发送
+                batch.timer.cancel(false);
+                full[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (full[0] != null) {
+            Batch batch = full[0];
+            scheduler.execute(() -> fire(batch.messages, batch.flush));
+        }
+    }
+
+    /**
+     * 立即发送该key等待中的批次（没有则跳过），随后在同一调度线程上执行 then
+     *
+     * @param key  批次key
+     * @param then 在之前所有批次之后执行的操作
+     */
+    public void flushThen(String key, Runnable then) {
+        Batch batch = batches.remove(key);
+        if (batch != null) {
+            batch.timer.cancel(false);
+        }
+        scheduler.execute(() -> {
+            if (batch != null) {
+                fire(batch.messages, batch.flush);
+            }
+            try {
+                then.run();
+            } catch (Exception e) {
+                log.error("批次[{}]之后的操作执行异常", key, e);
+            }
+        });
+    }
+
+    private void flushOnTimeout(String key, Batch batch) {
+        // 仅当该批次仍在等待时发送，已因条数上限提前发送的批次不会重复发送
+        if (batches.remove(key, batch)) {
+            fire(batch.messages, batch.flush);
+        }
+    }
+
+    private void fire(List<?> messages, Consumer<List<?>> flush) {
+        batchSize.record(messages.size());
+        if (messages.size() > 1) {
+            log.debug("合并{}条连发消息为一轮对话", messages.size());
+        }
+        try {
+            flush.accept(List.copyOf(messages));
+        } catch (Exception e) {
+            log.error("连发消息批次处理异常", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 等待中的消息批次，仅在 ConcurrentHashMap.compute 中修改
+     */
+    private static final class Batch {
+        private final List<Object> messages = new ArrayList<>();
+        private final Consumer<List<?>> flush;
+        private ScheduledFuture<?> timer;
+
+        private Batch(Consumer<List<?>> flush) {
+            this.flush = flush;
+        }
+    }
+}
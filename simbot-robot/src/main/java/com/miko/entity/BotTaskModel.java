@@ -12,6 +12,8 @@ public class BotTaskModel implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    // 任务ID
+    private Long id;
     // 消息内容
     private String content;
     // 发送目标
@@ -60,7 +60,7 @@ public enum NapCatApiEnum {
      */
     GET_MSG(
             "/get_msg",
-            HttpMethod.GET,
+            HttpMethod.POST,
             "获取消息详情",
             GetMsgRequest.class,
             GetMsgResponse.class
@@ -258,6 +258,18 @@ public enum NapCatApiEnum {
             SendPrivateMsgResponse.class
     ),
 
+    /**
+     * 获取群成员列表
+     * <p>获取指定群组的全部成员信息</p>
+     */
+    GET_GROUP_MEMBER_LIST(
+            "/get_group_member_list",
+            HttpMethod.POST,
+            "获取群成员列表",
+            GetGroupMemberListRequest.class,
+            GetGroupMemberListResponse.class
+    ),
+
     /*
     /**
      * 获取好友列表（带分类）
@@ -0,0 +1,31 @@
+package com.miko.entity.napcat.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 获取群成员列表请求实体
+ * 用于调用 /get_group_member_list 接口获取群成员列表
+ */
+@Data
+@Accessors(chain = true)
+public class GetGroupMemberListRequest implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 群ID
+     */
+    @JsonProperty("group_id")
+    private String groupId;
+
+    /**
+     * 是否不使用缓存
+     */
+    @JsonProperty("no_cache")
+    private Boolean noCache;
+}
@@ -1,5 +1,6 @@
 package com.miko.entity.napcat.request;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.experimental.Accessors;
 
@@ -20,5 +21,6 @@ public class GetMsgRequest implements Serializable {
      * 消息ID
      * 支持数字或字符串类型
      */
+    @JsonProperty("message_id")
     private String messageId;
 }
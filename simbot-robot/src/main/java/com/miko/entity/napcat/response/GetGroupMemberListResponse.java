@@ -0,0 +1,33 @@
+package com.miko.entity.napcat.response;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+public class GetGroupMemberListResponse implements Serializable {
+    private String status;
+    private Integer retcode;
+    private List<GroupMember> data;
+    private String message;
+    private String wording;
+    private Object echo;
+    private String stream;
+
+    @Data
+    public static class GroupMember implements Serializable {
+        private Long group_id;
+        private Long user_id;
+        private String nickname;
+        private String card;
+        private String sex;
+        private Integer age;
+        private String area;
+        private String level;
+        private Long join_time;
+        private Long last_sent_time;
+        private String role;
+        private String title;
+    }
+}
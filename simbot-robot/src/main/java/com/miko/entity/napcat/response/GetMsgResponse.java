@@ -1,5 +1,6 @@
 package com.miko.entity.napcat.response;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -63,21 +64,33 @@ public class GetMsgResponse implements Serializable {
     @AllArgsConstructor
     public static class MessageData {
         // 根据实际API返回定义具体字段
+        @JsonAlias("self_id")
         private Long selfId;
+        @JsonAlias("user_id")
         private Long userId;
         private Long time;
+        @JsonAlias("message_id")
         private Long messageId;
+        @JsonAlias("message_seq")
         private Long messageSeq;
+        @JsonAlias("real_id")
         private Long realId;
+        @JsonAlias("real_seq")
         private String realSeq;
+        @JsonAlias("message_type")
         private String messageType;
         private Sender sender;
+        @JsonAlias("raw_message")
         private String rawMessage;
         private Integer font;
+        @JsonAlias("sub_type")
         private String subType;
         private Object message;
+        @JsonAlias("message_format")
         private String messageFormat;
+        @JsonAlias("post_type")
         private String postType;
+        @JsonAlias("group_id")
         private Long groupId;
     }
 
@@ -88,6 +101,7 @@ public class GetMsgResponse implements Serializable {
     @NoArgsConstructor
     @AllArgsConstructor
     public static class Sender {
+        @JsonAlias("user_id")
         private Long userId;
         private String nickname;
         private String sex;
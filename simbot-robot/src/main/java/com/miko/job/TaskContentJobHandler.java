@@ -0,0 +1,54 @@
+package com.miko.job;
+
+import com.miko.config.AiJobConfig;
+import com.miko.entity.BotAiJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * 定时任务内容预生成：type 为 ai 的定时任务，content 是提示词，低峰期先生成好要发送的消息，到点直接发送
+ * <p>
+ * 任务对象ID为“定时任务ID:发送日期”，每天的预生成互不合并；过了发送日期仍未执行的任务直接跳过，不再调用模型。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskContentJobHandler implements AiJobHandler {
+
+    private static final String TASK_PROMPT = "你是QQ群友“日奈”，语气自然口语化。"
+            + "按照要求写一条稍后由定时任务发送的消息，不要解释，直接输出消息正文，不超过100字。";
+
+    private final AiJobConfig aiJobConfig;
+    private final BackgroundChat backgroundChat;
+
+    @Override
+    public AiJobType type() {
+        return AiJobType.TASK_CONTENT;
+    }
+
+    /**
+     * 某个定时任务在某天的预生成任务对象ID
+     */
+    public static String targetId(Long taskId, LocalDate date) {
+        return taskId + ":" + date;
+    }
+
+    @Override
+    public String handle(BotAiJob job) throws Exception {
+        String targetId = job.getTargetId();
+        LocalDate date = LocalDate.parse(targetId.substring(targetId.indexOf(':') + 1));
+        if (date.isBefore(LocalDate.now())) {
+            log.info("定时任务内容预生成[{}]已过发送日期，跳过", targetId);
+            return null;
+        }
+        String content = backgroundChat.complete(aiJobConfig.getModel(), TASK_PROMPT, job.getPayload());
+        if (content.isEmpty()) {
+            throw new IllegalStateException("生成内容为空");
+        }
+        return content;
+    }
+}
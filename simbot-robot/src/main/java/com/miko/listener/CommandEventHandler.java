@@ -1,6 +1,10 @@
 package com.miko.listener;
 
+import com.miko.command.Command;
+import com.miko.command.CommandRegistry;
+import com.miko.command.CommandRequest;
 import com.miko.config.VolcArkConfig;
+import com.miko.dispatch.AiDispatcher;
 import com.miko.entity.BotChatContext;
 import com.miko.entity.napcat.response.GetFriendsWithCategoryResponse;
 import com.miko.service.ArkDoubaoService;
@@ -13,7 +17,6 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -27,25 +30,15 @@ public class CommandEventHandler {
     private final NapCatApiService napCatApiService;
     private final BotContactService botContactService;
     private final ArkDoubaoService arkDoubaoService;
+    private final CommandRegistry commandRegistry;
+    private final AiDispatcher aiDispatcher;
 
+    /**
+     * 处理私聊命令，具体命令由下方 {@link Command} 方法声明，启动时注册到 {@link CommandRegistry}
+     * <p>由 {@link AiDispatcher} 在该好友的会话邮箱中调用，与这位好友的对话按顺序执行</p>
+     */
     public void handle(String text, OneBotFriendMessageEvent event) {
-        String uid = String.valueOf(event.getAuthorId());
-        String reply = switch (text) {
-            case "/模型列表", "/获取模型列表" -> modelList();
-            case String s when matches(s, "^/models$") -> modelList();
-            case String s when matches(s, "^(?:/切换模型|/changeModel)\\d+$") -> modelSwitch(uid, s);
-            case String s when matches(s, "(?s)^(?:/设置聊天风格|/更新聊天风格|/changePersona)\\s*(.*)$") -> updatePersona(uid, s);
-            case String s when matches(s, "^/(?:开启深度思考|关闭深度思考|deepThinkingOn|deepThinkingOff)$") -> deepThinking(s);
-            case "/对话列表", "/查看对话", "/chatList" -> chatList();
-            case String s when matches(s, "^(?:/删除对话|/removeChat)\\d+$") -> deleteChat(s);
-            case "/特别关心列表", "/特别关心" -> specialCareList();
-            case "/好友列表" -> friendsList();
-            case String s when matches(s, "^(/清空上下文|/重置对话|/clearContext)\\s*") -> clearContext(uid);
-            default -> {
-                log.debug("未知命令: {}", text);
-                yield null;
-            }
-        };
+        String reply = commandRegistry.dispatch(String.valueOf(event.getAuthorId()), text);
         if (reply != null) {
             event.getContent().sendAsync(reply);
         }
@@ -55,23 +48,24 @@ public class CommandEventHandler {
     // 命令处理
     // ========================================================================
 
-    private String modelList() {
-        return "✅ 当前使用模型：" + volcArkConfig.getModel() + "\n\n"
+    @Command({"/模型列表", "/获取模型列表", "/models"})
+    String modelList(CommandRequest request) {
+        return "✅ 当前使用模型：" + arkDoubaoService.baseModel(BotChatContext.ChatType.PRIVATE, request.uid()) + "\n\n"
                 + "📋 可用模型列表：\n"
                 + IntStream.range(0, volcArkConfig.getModels().size())
                         .mapToObj(i -> String.format("  %d. %s", i + 1, volcArkConfig.getModels().get(i)))
                         .collect(Collectors.joining("\n"));
     }
 
-    private String modelSwitch(String uid, String text) {
-        var m = Pattern.compile("^(?:/切换模型|/changeModel)(\\d+)$").matcher(text);
-        if (!m.find()) return "❌ 指令格式错误！正确格式：/切换模型1 或 /changeModel1";
-        int idx = parseInt(m.group(1));
+    @Command(value = {"/切换模型", "/changeModel"}, args = "(\\d+)")
+    String modelSwitch(CommandRequest request) {
+        String uid = request.uid();
+        int idx = parseInt(request.group(1));
         if (idx < 1 || idx > volcArkConfig.getModels().size())
             return "❌ 序号超出范围！当前支持 1~" + volcArkConfig.getModels().size() + " 号模型";
         try {
             String target = volcArkConfig.getModels().get(idx - 1);
-            volcArkConfig.setModel(target);
+            // 只改该用户自己的模型，全局的 volc.ark.model 仅作为默认值，其他会话的上下文链不受影响
             botContactService.updateAiModel(uid, target);
             log.info("用户切换模型：{}（序号{}）", target, idx);
             return "✅ 模型切换成功！\n当前模型：" + target + "\n序号：" + idx;
@@ -81,10 +75,10 @@ public class CommandEventHandler {
         }
     }
 
-    private String updatePersona(String uid, String text) {
-        var m = Pattern.compile("(?s)^(?:/设置聊天风格|/更新聊天风格|/changePersona)\\s*(.*)$").matcher(text);
-        if (!m.matches()) return null;
-        String prompt = m.group(1).trim();
+    @Command(value = {"/设置聊天风格", "/更新聊天风格", "/changePersona"}, args = "(?s)\\s*(.*)")
+    String updatePersona(CommandRequest request) {
+        String uid = request.uid();
+        String prompt = request.group(1).trim();
         if (prompt.isEmpty()) return "你要先告诉我你想要什么样的聊天风格呀～";
         if (prompt.length() > 3000) return "风格描述太长啦～我们简短一点好不好？";
         botContactService.updateAiPrompt(uid, prompt);
@@ -92,10 +86,10 @@ public class CommandEventHandler {
         return "记住啦～以后我就按这个风格陪你聊天 💖";
     }
 
-    private String deepThinking(String text) {
-        boolean on = text.equals("/开启深度思考") || text.equals("/deepThinkingOn");
-        if (!on && !text.equals("/关闭深度思考") && !text.equals("/deepThinkingOff"))
-            return "❌ 指令格式错误！正确格式：/开启深度思考 或 /关闭深度思考";
+    @Command({"/开启深度思考", "/关闭深度思考", "/deepThinkingOn", "/deepThinkingOff"})
+    String deepThinking(CommandRequest request) {
+        String command = request.command();
+        boolean on = command.equals("/开启深度思考") || command.equals("/deepThinkingOn");
         try {
             volcArkConfig.setDeepThinking(on);
             log.info("用户设置深度思考：{}", on);
@@ -106,7 +100,8 @@ public class CommandEventHandler {
         }
     }
 
-    private String chatList() {
+    @Command({"/对话列表", "/查看对话", "/chatList"})
+    String chatList(CommandRequest request) {
         if (chatContexts.isEmpty()) return "📋 当前没有正在进行的对话";
         try {
             StringBuilder reply = new StringBuilder("📋 当前对话列表：\n\n");
@@ -125,18 +120,21 @@ public class CommandEventHandler {
         }
     }
 
-    private String deleteChat(String text) {
-        var m = Pattern.compile("^(?:/删除对话|/removeChat)(\\d+)$").matcher(text);
-        if (!m.find()) return "❌ 指令格式错误！正确格式：/删除对话1 或 /removeChat1";
-        int idx = parseInt(m.group(1));
+    @Command(value = {"/删除对话", "/removeChat"}, args = "(\\d+)")
+    String deleteChat(CommandRequest request) {
+        int idx = parseInt(request.group(1));
         if (idx < 1) return "❌ 序号必须是数字！正确格式：/删除对话1";
         if (chatContexts.isEmpty()) return "📋 当前没有正在进行的对话";
         try {
             var entries = new ArrayList<>(chatContexts.entrySet());
             if (idx > entries.size()) return "❌ 序号超出范围！当前共有 " + entries.size() + " 个对话";
             var entry = entries.get(idx - 1);
-            chatContexts.remove(entry.getKey());
-            log.info("用户删除对话：{}", entry.getKey());
+            // 被删除的对话可能属于其他会话，交给它自己的邮箱执行，等进行中的那一轮结束后再移除
+            String key = entry.getKey();
+            if (!aiDispatcher.dispatch(key, () -> chatContexts.remove(key))) {
+                return "❌ 删除对话失败：当前对话繁忙，请稍后再试";
+            }
+            log.info("用户删除对话：{}", key);
             return "✅ 成功删除对话！\n对话ID：" + entry.getKey()
                     + "\n聊天类型：" + entry.getValue().getChatType() + "\n聊天ID：" + entry.getValue().getChatId();
         } catch (Exception e) {
@@ -145,7 +143,8 @@ public class CommandEventHandler {
         }
     }
 
-    private String specialCareList() {
+    @Command({"/特别关心列表", "/特别关心"})
+    String specialCareList(CommandRequest request) {
         var resp = fetchFriends();
         if (resp == null) return "❌ 获取好友列表失败";
         try {
@@ -171,7 +170,8 @@ public class CommandEventHandler {
         }
     }
 
-    private String friendsList() {
+    @Command("/好友列表")
+    String friendsList(CommandRequest request) {
         var resp = fetchFriends();
         if (resp == null) return "❌ 获取好友列表失败";
         try {
@@ -193,8 +193,9 @@ public class CommandEventHandler {
         }
     }
 
-    private String clearContext(String uid) {
-        boolean ok = arkDoubaoService.clearChatContext(uid);
+    @Command(value = {"/清空上下文", "/重置对话", "/clearContext"}, args = "\\s*")
+    String clearContext(CommandRequest request) {
+        boolean ok = arkDoubaoService.clearChatContext(request.uid());
         return ok ? "✨ 已帮主人清空所有聊天上下文啦～重新开始聊天吧～"
                 : "😥 清空上下文失败啦，是不是输入的指令有问题呀？";
     }
@@ -203,10 +204,6 @@ public class CommandEventHandler {
     // 工具方法
     // ========================================================================
 
-    private static boolean matches(String text, String regex) {
-        return text.matches(regex);
-    }
-
     private static int parseInt(String s) {
         try { return Integer.parseInt(s); } catch (NumberFormatException e) { return -1; }
     }
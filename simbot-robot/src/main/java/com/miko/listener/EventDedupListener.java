@@ -0,0 +1,31 @@
+package com.miko.listener;
+
+import com.miko.dispatch.EventDeduplicator;
+import lombok.RequiredArgsConstructor;
+import love.forte.simbot.common.PriorityConstant;
+import love.forte.simbot.component.onebot.v11.core.event.message.OneBotMessageEvent;
+import love.forte.simbot.event.EventResult;
+import love.forte.simbot.quantcat.common.annotations.Listener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 重复消息过滤
+ * <p>
+ * 优先级最高的监听器，同一 (self_id, message_id) 第二次投递时截断事件，
+ * 后续监听器（日志、AI回复、命令）都不会再处理。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class EventDedupListener {
+
+    private final EventDeduplicator eventDeduplicator;
+
+    @Listener(priority = PriorityConstant.FIRST)
+    public EventResult dedup(OneBotMessageEvent event) {
+        if (eventDeduplicator.firstSeen(event.getBot().getId().toString(), event.getId().toString())) {
+            return EventResult.empty();
+        }
+        return EventResult.truncate();
+    }
+}
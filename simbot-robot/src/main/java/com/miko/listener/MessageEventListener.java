@@ -1,7 +1,16 @@
 package com.miko.listener;
 
+import com.miko.admission.DegradationLadder;
+import com.miko.admission.QuotaLimiter;
+import com.miko.cache.GroupMemberDirectory;
+import com.miko.cache.RecentMessageBuffer;
+import com.miko.config.AiStreamConfig;
+import com.miko.dispatch.AiDispatcher;
+import com.miko.dispatch.ChunkedReplySender;
+import com.miko.dispatch.MessageCoalescer;
 import com.miko.entity.BotChatContact;
 import com.miko.entity.BotChatContext;
+import com.miko.metrics.ListenerMetrics;
 import com.miko.service.ArkDoubaoService;
 import com.miko.service.BotContactService;
 import com.miko.util.OneBotMessageUtil;
@@ -13,13 +22,17 @@ import love.forte.simbot.common.id.ID;
 import love.forte.simbot.component.onebot.v11.core.event.message.OneBotFriendMessageEvent;
 import love.forte.simbot.component.onebot.v11.core.event.message.OneBotGroupMessageEvent;
 import love.forte.simbot.component.onebot.v11.core.event.message.OneBotMessageEvent;
+import love.forte.simbot.message.MessageReceipt;
+import love.forte.simbot.message.SingleMessageReceipt;
 import love.forte.simbot.quantcat.common.annotations.ContentTrim;
 import love.forte.simbot.quantcat.common.annotations.Filter;
 import love.forte.simbot.quantcat.common.annotations.Listener;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -29,6 +42,16 @@ public class MessageEventListener {
     private final ArkDoubaoService arkDoubaoService;
     private final BotContactService botContactService;
     private final CommandEventHandler cmdHandler;
+    private final AiDispatcher aiDispatcher;
+    private final MessageCoalescer messageCoalescer;
+    private final DegradationLadder degradationLadder;
+    private final GroupMemberDirectory memberDirectory;
+    private final OneBotMessageUtil oneBotMessageUtil;
+    private final RecentMessageBuffer recentMessages;
+    private final ListenerMetrics listenerMetrics;
+    private final AiStreamConfig aiStreamConfig;
+    private final ChunkedReplySender chunkedReplySender;
+    private final QuotaLimiter quotaLimiter;
 
     /**
      * 注入全局 对话上下文: key = 对话类型+群聊ID/好友ID+对话ID value = 该对话的上下文
@@ -50,14 +73,11 @@ public class MessageEventListener {
         String groupId = event.getContent().getId().toString();
         // 群友ID
         ID groupMemberId = event.getAuthorId();
-        // 群友昵称
-        String groupMemberNickname = Objects.requireNonNull(event.getContent().getMember(groupMemberId)).getNick();
-        //可能未设置群昵称，使用用户名代替
-        if (groupMemberNickname == null || groupMemberNickname.isEmpty()) {
-            groupMemberNickname = Objects.requireNonNull(event.getContent().getMember(groupMemberId)).getName();
-        }
+        // 群友昵称（群名片优先），取自消息的发送者信息并记入群成员名录
+        String groupMemberNickname = memberDirectory.observe(event);
         // 消息内容
-        String msgfix = OneBotMessageUtil.fixMessage(event);
+        String msgfix = oneBotMessageUtil.fixMessage(event);
+        recentMessages.record(BotChatContext.ChatType.GROUP + groupId, event.getId().toString(), groupMemberNickname, msgfix);
         log.info("接收 <- 群聊 [{}({})] [{}({})] {}", groupNickname, groupId, groupMemberNickname, groupMemberId, msgfix);
     }
 
@@ -68,12 +88,67 @@ public class MessageEventListener {
         if (Objects.requireNonNull(event.getMessageContent().getPlainText()).startsWith("/")) {
             return;
         }
+        // 仅受理并入队，耗时的查询和AI调用交给调度器执行，同一群的消息按顺序处理；
+        // 只合并同一群友的连发消息，每批的回复对象和配额都是这位群友
+        String referenceKey = BotChatContext.ChatType.GROUP + event.getContent().getId().toString();
+        String batchKey = referenceKey + ":" + event.getAuthorId();
+        // 消息内容在调度器的虚拟线程上整合：先执行的 groupMsgEvent 已按消息ID缓存了本地整合结果，
+        // 引用的消息或@的成员不在本地时才调用接口，不占用事件线程
+        messageCoalescer.offer(batchKey, BotChatContext.ChatType.GROUP, event, batch -> {
+            if (!aiDispatcher.dispatch(referenceKey, () -> replyGroup(batch))) {
+                batch.getLast().replyAsync(degradationLadder.getBusyReply());
+            }
+        });
+    }
+
+    @Listener(priority = PriorityConstant.DE_PRIORITIZE_1)
+    public void friendMsgEvent(OneBotFriendMessageEvent event) {
+        //消息内容
+        String text = Objects.requireNonNull(event.getMessageContent().getPlainText()).trim();
+        String msgFix = oneBotMessageUtil.fixMessage(event);
+        recentMessages.record(BotChatContext.ChatType.PRIVATE + event.getAuthorId().toString(), event.getId().toString(),
+                event.getSourceEvent().getSender().getNickname(), msgFix);
+        String referenceKey = BotChatContext.ChatType.PRIVATE + event.getAuthorId().toString();
+        // 处理以/开头的指令：与该好友的对话排在同一邮箱，清空上下文、切换风格不会与进行中的对话并发改写上下文；
+        // 先发送合并窗口中还在等待的消息，指令不会抢在之前的消息前面执行
+        if (text.startsWith("/")) {
+            messageCoalescer.flushThen(referenceKey, () -> {
+                if (!aiDispatcher.dispatch(referenceKey, () -> cmdHandler.handle(text, event))) {
+                    event.replyAsync(degradationLadder.getBusyReply());
+                }
+            });
+            return;
+        }
+        // 仅受理并入队，耗时的查询和AI调用交给调度器执行，同一好友的消息按顺序处理
+        messageCoalescer.offer(referenceKey, BotChatContext.ChatType.PRIVATE, event, batch -> {
+            if (!aiDispatcher.dispatch(referenceKey, () -> replyFriend(batch))) {
+                batch.getLast().replyAsync(degradationLadder.getBusyReply());
+            }
+        });
+    }
+
+    /**
+     * 回复群聊，合并窗口内同一群友的多条@消息作为一轮对话，回复最后一条
+     */
+    private void replyGroup(List<OneBotGroupMessageEvent> batch) {
+        OneBotGroupMessageEvent event = batch.getLast();
         // 群昵称
         String groupNickname = event.getContent().getName();
         // 群ID
         String groupId = event.getContent().getId().toString();
         // 消息内容
-        String msgfix = OneBotMessageUtil.fixMessage(event);
+        String msgfix = mergeMessages(batch);
+
+        // 配额不足时不调用AI，直接本地回复
+        String memberId = event.getAuthorId().toString();
+        int intimacyLevel = botContactService.getIntimacyLevel(memberId);
+        if (!quotaLimiter.tryAcquire(BotChatContext.ChatType.GROUP, groupId, memberId, intimacyLevel)) {
+            if (quotaLimiter.shouldNotify(memberId)) {
+                event.replyAsync(quotaLimiter.getOverQuotaReply());
+            }
+            log.info("群聊[{}({})]成员[{}]超出调用配额", groupNickname, groupId, memberId);
+            return;
+        }
 
         // 获取该群的对话上下文，如果不存在则创建新的
         String referenceKey = BotChatContext.ChatType.GROUP + groupId;
@@ -84,27 +159,25 @@ public class MessageEventListener {
                         .build()
         );
         // 调用连续对话方法
-        //String reply = arkDoubaoService.streamMultiChatWithDoubao(msgfix, botChatContext.getMessages());
-        String reply = arkDoubaoService.multiChatWithDoubao(msgfix, botChatContext);
-        event.replyAsync(reply);
+        String reply = chat(referenceKey, event, msgfix, botChatContext);
+        if (botChatContext.isLastReplyCached()) {
+            // 回复取自群聊回复缓存，没有调用AI，退回本轮占用的配额
+            quotaLimiter.refund(BotChatContext.ChatType.GROUP, groupId, memberId, intimacyLevel);
+        }
+        listenerMetrics.recordReply(BotChatContext.ChatType.GROUP, batch.getFirst());
         log.info("回复 -> 群聊[{}({})]: {}", groupNickname, groupId, reply);
     }
 
-    @Listener(priority = PriorityConstant.DE_PRIORITIZE_1)
-    public void friendMsgEvent(OneBotFriendMessageEvent event) {
-        //消息内容
-        String text = Objects.requireNonNull(event.getMessageContent().getPlainText()).trim();
-        // 处理以/开头的指令
-        if (text.startsWith("/")) {
-            cmdHandler.handle(text, event);
-            return;
-        }
-
+    /**
+     * 回复私聊，合并窗口内的连发消息作为一轮对话，回复最后一条
+     */
+    private void replyFriend(List<OneBotFriendMessageEvent> batch) {
+        OneBotFriendMessageEvent event = batch.getLast();
         String friendId = event.getAuthorId().toString();
         // 好友昵称
         String friendNickname = event.getSourceEvent().getSender().getNickname();
         // 提取消息
-        String msgFix = OneBotMessageUtil.fixMessage(event);
+        String msgFix = mergeMessages(batch);
         log.info("接收 <- 私聊 [{}({})] {}", friendNickname, friendId, msgFix);
 
         // 3️⃣ 查询数据库好友记录
@@ -115,7 +188,15 @@ public class MessageEventListener {
             user = botContactService.getFriendUser(friendId);
         }
 
-        botContactService.updateFriendUser(user, msgFix);
+        user = botContactService.updateFriendUser(friendId, user, msgFix);
+
+        if (!quotaLimiter.tryAcquire(BotChatContext.ChatType.PRIVATE, friendId, friendId, intimacyLevel(user))) {
+            if (quotaLimiter.shouldNotify(friendId)) {
+                event.replyAsync(quotaLimiter.getOverQuotaReply());
+            }
+            log.info("私聊[{}({})]超出调用配额", friendNickname, friendId);
+            return;
+        }
 
         // 7️⃣ 调用 AI 处理聊天
         String referenceKey = BotChatContext.ChatType.PRIVATE + friendId;
@@ -126,9 +207,58 @@ public class MessageEventListener {
                         .build()
         );
 
-        String reply = arkDoubaoService.multiChatWithDoubao(msgFix, botChatContext);
+        String reply = chat(referenceKey, event, msgFix, botChatContext);
         log.info("发送 -> {} - {}", event.getId(), reply);
-        event.replyAsync(reply);
+        listenerMetrics.recordReply(BotChatContext.ChatType.PRIVATE, batch.getFirst());
     }
 
+    /**
+     * 调用AI并发送回复：开启流式回复时生成一句发送一句，否则整段生成后一次发送
+     *
+     * @return 完整回复内容
+     */
+    private String chat(String referenceKey, OneBotMessageEvent event, String prompt, BotChatContext botChatContext) {
+        if (aiStreamConfig.isEnabled()) {
+            return arkDoubaoService.streamMultiChatWithDoubao(prompt, botChatContext,
+                    chunkedReplySender.open(event, botChatContext.getChatType(),
+                            (receipt, chunk) -> recordReply(referenceKey, event, receipt, chunk)));
+        }
+        // 异步调用并串联 replyAsync；超时会中止方舟请求并回复繁忙提示，且等超时的那一轮真正退出后才返回。
+        // 这里只阻塞调度器的虚拟线程，保证同一会话按顺序回复，上一轮不会与下一轮同时改写会话上下文
+        return arkDoubaoService.multiChatWithDoubaoAsync(prompt, botChatContext)
+                .exceptionally(e -> {
+                    log.warn("会话[{}]AI回复超时或失败: {}", referenceKey, e.toString());
+                    return degradationLadder.getBusyReply();
+                })
+                .thenCompose(reply -> event.replyAsync(reply)
+                        .thenApply(receipt -> {
+                            recordReply(referenceKey, event, receipt, reply);
+                            return reply;
+                        }))
+                .join();
+    }
+
+    private static int intimacyLevel(BotChatContact contact) {
+        return contact == null ? 0 : Objects.requireNonNullElse(contact.getIntimacyLevel(), 0);
+    }
+
+    /**
+     * 把机器人发出的回复记入近期消息缓冲，用户引用这条回复时可直接取回
+     */
+    private void recordReply(String conversation, OneBotMessageEvent event, MessageReceipt receipt, String reply) {
+        if (receipt instanceof SingleMessageReceipt single) {
+            recentMessages.record(conversation, single.getId().toString(), event.getBot().getName(), reply);
+        }
+    }
+
+    /**
+     * 合并同一批次的消息，按到达顺序每条一行；一批只来自同一个人，无需标注发送者
+     * <p>在调度器的虚拟线程上执行，受理时已缓存的整合结果直接复用，本地未命中的引用和@在这里调用接口补全</p>
+     */
+    private String mergeMessages(List<? extends OneBotMessageEvent> batch) {
+        return batch.stream()
+                .map(oneBotMessageUtil::resolveMessage)
+                .filter(msg -> !msg.isBlank())
+                .collect(Collectors.joining("\n"));
+    }
 }
@@ -1,5 +1,8 @@
 package com.miko.listener;
 
+import com.miko.cache.GroupMemberDirectory;
+import com.miko.cache.RecentMessage;
+import com.miko.cache.RecentMessageBuffer;
 import com.miko.entity.napcat.response.GetFriendsWithCategoryResponse;
 import com.miko.service.NapCatApiService;
 import lombok.RequiredArgsConstructor;
@@ -31,6 +34,8 @@ public class NapCatEventListener {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
     private final NapCatApiService napCatApiService;
+    private final GroupMemberDirectory memberDirectory;
+    private final RecentMessageBuffer recentMessages;
 
     @Listener
     public void handle(Event event) {
@@ -116,6 +121,7 @@ public class NapCatEventListener {
     @Listener
     public void groupAdminEvent(OneBotGroupAdminEvent event) {
         log.info("群管理员变动事件{}", event);
+        memberDirectory.refresh(event.getSourceEvent().getGroupId().toString());
     }
 
     /**
@@ -124,7 +130,9 @@ public class NapCatEventListener {
     @Listener
     public void groupChangeEvent(OneBotGroupChangeEvent event) {
         log.info("群成员增加或减少事件{}", event);
-        event.getContent().sendAsync("欢迎新来的~");
+        var group = event.getContent();
+        memberDirectory.refresh(group.getId().toString());
+        group.sendAsync("欢迎新来的~");
     }
 
     /**
@@ -141,7 +149,8 @@ public class NapCatEventListener {
      */
     @Listener
     public void groupRecallEvent(OneBotGroupRecallEvent event) {
-        log.info("群消息撤回事件{}", event);
+        RecentMessage recalled = recentMessages.find(event.getSourceEvent().getMessageId().toString());
+        log.info("群消息撤回事件{}，撤回内容：{}", event, recalled == null ? "未知" : recalled.sender() + "：" + recalled.text());
 //        event.getContent().sendAsync("撤回了啥，让我瞅瞅");
     }
 
@@ -159,7 +168,8 @@ public class NapCatEventListener {
      */
     @Listener
     public void friendRecallEvent(OneBotFriendRecallEvent event) {
-        log.info("好友消息撤回事件{}", event);
+        RecentMessage recalled = recentMessages.find(event.getSourceEvent().getMessageId().toString());
+        log.info("好友消息撤回事件{}，撤回内容：{}", event, recalled == null ? "未知" : recalled.text());
         event.getContent().sendAsync("撤回了啥，让我瞅瞅");
     }
 
@@ -9,6 +9,6 @@ import java.util.List;
 @Mapper
 public interface BotTaskMapper {
 
-    @Select("SELECT `TARGET_TYPE`,`TARGET_ID`,`TYPE`,`CONTENT` FROM `bot_task` WHERE `ACTIVE` = '1'")
+    @Select("SELECT `ID`,`TARGET_TYPE`,`TARGET_ID`,`TYPE`,`CONTENT` FROM `bot_task` WHERE `ACTIVE` = '1'")
     List<BotTaskModel> getAllActive();
 }
@@ -0,0 +1,115 @@
+package com.miko.metrics;
+
+import com.miko.entity.BotChatContext;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import love.forte.simbot.event.Event;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监听器耗时统计
+ * <p>
+ * 所有监听方法由 {@link ListenerTimingAspect} 统一包裹一次 {@link #start}，发布两类指标：
+ * <ul>
+ *     <li>simbot.listener.duration：监听方法耗时，按 listener / event / chat 打标签，百分位在 application-web.yml 中配置</li>
+ *     <li>simbot.listener.active：正在执行的监听方法数（LongTaskTimer）</li>
+ * </ul>
+ * 另有 simbot.reply.latency 记录从事件发生到AI回复发出的端到端耗时，
+ * 流式回复时 simbot.reply.first.chunk 记录从开始生成到第一条消息发出的耗时。
+ * </p>
+ */
+@Component
+public class ListenerMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+    private final Map<BotChatContext.ChatType, Timer> replyLatency = new ConcurrentHashMap<>();
+    private final Map<BotChatContext.ChatType, Timer> firstChunkLatency = new ConcurrentHashMap<>();
+
+    public ListenerMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 开始计时
+     *
+     * @param listener  监听方法名
+     * @param eventType 事件类型
+     * @param chatType  对话类型，非消息事件传null
+     * @return 计时区间，关闭时记录耗时
+     */
+    public Span start(String listener, Class<? extends Event> eventType, BotChatContext.ChatType chatType) {
+        String chat = chatType == null ? "none" : chatType.name().toLowerCase(Locale.ROOT);
+        Meters m = meters.computeIfAbsent(listener + '|' + eventType.getSimpleName() + '|' + chat,
+                _ -> new Meters(
+                        Timer.builder("simbot.listener.duration")
+                                .description("监听方法耗时")
+                                .tag("listener", listener)
+                                .tag("event", eventType.getSimpleName())
+                                .tag("chat", chat)
+                                .register(meterRegistry),
+                        LongTaskTimer.builder("simbot.listener.active")
+                                .description("正在执行的监听方法")
+                                .tag("listener", listener)
+                                .tag("event", eventType.getSimpleName())
+                                .tag("chat", chat)
+                                .register(meterRegistry)));
+        return new Span(m.duration, Timer.start(meterRegistry), m.active.start());
+    }
+
+    /**
+     * 记录从事件发生到回复发出的耗时
+     */
+    public void recordReply(BotChatContext.ChatType chatType, Event event) {
+        long elapsed = System.currentTimeMillis() - event.getTime().getMilliseconds();
+        if (elapsed < 0) {
+            return;
+        }
+        replyLatency.computeIfAbsent(chatType, type -> Timer.builder("simbot.reply.latency")
+                        .description("从事件发生到AI回复发出的耗时")
+                        .tag("chat", type.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry))
+                .record(elapsed, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录流式回复从开始生成到第一条消息发出的耗时
+     */
+    public void recordFirstChunk(BotChatContext.ChatType chatType, long elapsedNanos) {
+        firstChunkLatency.computeIfAbsent(chatType, type -> Timer.builder("simbot.reply.first.chunk")
+                        .description("流式回复从开始生成到第一条消息发出的耗时")
+                        .tag("chat", type.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry))
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private record Meters(Timer duration, LongTaskTimer active) {
+    }
+
+    /**
+     * 一次监听方法的计时区间
+     */
+    public static final class Span implements AutoCloseable {
+        private final Timer timer;
+        private final Timer.Sample sample;
+        private final LongTaskTimer.Sample active;
+
+        private Span(Timer timer, Timer.Sample sample, LongTaskTimer.Sample active) {
+            this.timer = timer;
+            this.sample = sample;
+            this.active = active;
+        }
+
+        @Override
+        public void close() {
+            sample.stop(timer);
+            active.stop();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.miko.metrics;
+
+import com.miko.entity.BotChatContext;
+import lombok.RequiredArgsConstructor;
+import love.forte.simbot.event.Event;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+/**
+ * 为所有 {@link love.forte.simbot.quantcat.common.annotations.Listener} 方法统一计时，监听方法本身不需要任何埋点
+ * <p>
+ * listener 标签取方法名，event 标签取方法声明的事件参数类型；
+ * chat 标签按事件类型名判断：含 Group 为群聊，含 Friend 为私聊，其余为 none。
+ * </p>
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class ListenerTimingAspect {
+
+    private final ListenerMetrics listenerMetrics;
+
+    @Around("@annotation(love.forte.simbot.quantcat.common.annotations.Listener)")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Class<?>[] parameterTypes = signature.getParameterTypes();
+        if (parameterTypes.length == 0 || !Event.class.isAssignableFrom(parameterTypes[0])) {
+            return joinPoint.proceed();
+        }
+        @SuppressWarnings("unchecked")
+        Class<? extends Event> eventType = (Class<? extends Event>) parameterTypes[0];
+        try (var _ = listenerMetrics.start(signature.getName(), eventType, chatType(eventType))) {
+            return joinPoint.proceed();
+        }
+    }
+
+    private static BotChatContext.ChatType chatType(Class<? extends Event> eventType) {
+        String name = eventType.getSimpleName();
+        if (name.contains("Group")) {
+            return BotChatContext.ChatType.GROUP;
+        }
+        if (name.contains("Friend")) {
+            return BotChatContext.ChatType.PRIVATE;
+        }
+        return null;
+    }
+}
@@ -1,6 +1,10 @@
 package com.miko.quartz;
 
 import com.miko.config.SimBotConfig;
+import com.miko.entity.BotTaskModel;
+import com.miko.job.AiJobQueue;
+import com.miko.job.AiJobType;
+import com.miko.job.TaskContentJobHandler;
 import com.miko.service.BotTaskService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +15,7 @@ import love.forte.simbot.component.onebot.v11.core.bot.OneBotBotManager;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
@@ -23,12 +28,19 @@ import java.util.Calendar;
 @RequiredArgsConstructor
 public class BotScheduledTask {
 
+    /**
+     * 由AI预生成内容的定时任务类型
+     */
+    private static final String AI_TASK_TYPE = "ai";
+
     private final SimBotConfig simBotConfig;
 
     private final BotTaskService botTaskService;
 
     private final Application application;
 
+    private final AiJobQueue aiJobQueue;
+
 
     /**
      * 每一小时发送一次: 0 0 0/1 * * ?
@@ -40,13 +52,17 @@ public class BotScheduledTask {
         try {
             final OneBotBot bot = getBot();
             botTaskService.getAllActive().forEach(task -> {
+                String content = resolveContent(task);
+                if (content == null) {
+                    return;
+                }
                 if ("0".equals(task.getTargetType())) {
                     // https://simbot.forte.love/component-onebot-v11-onebotbot.html#onebotbotgrouprelation
                     bot.getGroupRelation().getGroups().collectAsync(
                             bot, group -> {
                                 if (group.getId().equals(Identifies.of(task.getTargetId()))) {
-                                    group.sendAsync(task.getContent());
-                                    log.info("发送定时任务,group={}, msg={}", task.getTargetId(), task.getContent());
+                                    group.sendAsync(content);
+                                    log.info("发送定时任务,group={}, msg={}", task.getTargetId(), content);
                                 }
                             }
                     );
@@ -55,8 +71,8 @@ public class BotScheduledTask {
                     bot.getContactRelation().getContacts().collectAsync(
                             bot, friend -> {
                                 if (friend.getId().equals(Identifies.of(task.getTargetId()))) {
-                                    friend.sendAsync(task.getContent());
-                                    log.info("发送定时任务,friend={}, msg={}", friend.getId(), task.getContent());
+                                    friend.sendAsync(content);
+                                    log.info("发送定时任务,friend={}, msg={}", friend.getId(), content);
                                 }
                             }
                     );
@@ -67,6 +83,36 @@ public class BotScheduledTask {
         }
     }
 
+    /**
+     * 每天凌晨为AI类定时任务提交内容预生成任务，由后台任务在低峰期生成
+     */
+    @Scheduled(cron = "0 30 1 * * ?")
+    public void prepareAiContent() {
+        try {
+            botTaskService.getAllActive().stream()
+                    .filter(task -> AI_TASK_TYPE.equals(task.getType()))
+                    .forEach(task -> aiJobQueue.submit(AiJobType.TASK_CONTENT,
+                            TaskContentJobHandler.targetId(task.getId(), LocalDate.now()), task.getContent()));
+        } catch (Exception e) {
+            log.error("定时任务内容预生成提交异常!", e);
+        }
+    }
+
+    /**
+     * 定时任务实际发送的内容：AI类任务取当天预生成的结果，还没有生成时跳过
+     */
+    private String resolveContent(BotTaskModel task) {
+        if (!AI_TASK_TYPE.equals(task.getType())) {
+            return task.getContent();
+        }
+        String content = aiJobQueue.latestResult(AiJobType.TASK_CONTENT,
+                TaskContentJobHandler.targetId(task.getId(), LocalDate.now()), LocalDate.now().atStartOfDay());
+        if (content == null) {
+            log.warn("定时任务[{}]今天的内容尚未生成，跳过发送", task.getId());
+        }
+        return content;
+    }
+
     @Scheduled(cron = "0 0 0/1 * * ?")
     public void loveGreeting() {
         Calendar calendar = Calendar.getInstance();
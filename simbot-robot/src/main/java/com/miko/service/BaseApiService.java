@@ -150,7 +150,9 @@ public class BaseApiService {
     public <T, R> R callApi(HttpMethod method, String path, T request, Class<R> responseClass,
                             Map<String, String> headers, Map<String, String> queryParams, int timeoutSeconds) {
         try {
-            log.info("调用API - 方法: {}, 路径: {}, 请求: {}", method, path, JsonUtils.toJson(request));
+            if (log.isDebugEnabled()) {
+                log.debug("调用API - 方法: {}, 路径: {}, 请求: {}", method, path, JsonUtils.toJson(request));
+            }
             WebClient webClient1 = webClient.mutate().baseUrl(simBotConfig.getAuthorization().getApiServerHost()).build();//todo
             // 构建WebClient请求
             WebClient.RequestBodySpec requestSpec = webClient1
@@ -184,7 +186,7 @@ public class BaseApiService {
             // 获取响应
             String responseBody = responseMono.block();
 
-            log.info("API响应 - 方法: {}, 路径: {}, 响应: {}", method, path, responseBody);
+            log.debug("API响应 - 方法: {}, 路径: {}, 响应: {}", method, path, responseBody);
 
             // 解析响应
             return JsonUtils.fromJson(responseBody, responseClass);
@@ -238,7 +240,9 @@ public class BaseApiService {
     public <T, R> Mono<R> callApiAsync(HttpMethod method, String path, T request, Class<R> responseClass,
                                        Map<String, String> headers, Map<String, String> queryParams, int timeoutSeconds) {
         try {
-            log.info("异步调用API - 方法: {}, 路径: {}, 请求: {}", method, path, JsonUtils.toJson(request));
+            if (log.isDebugEnabled()) {
+                log.debug("异步调用API - 方法: {}, 路径: {}, 请求: {}", method, path, JsonUtils.toJson(request));
+            }
 
             // 构建WebClient请求
             WebClient.RequestBodySpec requestSpec = webClient
@@ -269,7 +273,7 @@ public class BaseApiService {
                     .bodyToMono(String.class)
                     .timeout(Duration.ofSeconds(timeoutSeconds))
                     .map(responseBody -> {
-                        log.info("异步API响应 - 方法: {}, 路径: {}, 响应: {}", method, path, responseBody);
+                        log.debug("异步API响应 - 方法: {}, 路径: {}, 响应: {}", method, path, responseBody);
                         return JsonUtils.fromJson(responseBody, responseClass);
                     })
                     .onErrorMap(WebClientResponseException.class, e -> {
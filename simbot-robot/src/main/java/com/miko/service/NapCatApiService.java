@@ -219,6 +219,18 @@ public class NapCatApiService {
         return baseApiService.callApi(NapCatApiEnum.FORWARD_FRIEND_SINGLE_MSG, request, ForwardFriendSingleMsgResponse.class);
     }
 
+    // ==================== 群成员相关 ====================
+
+    /**
+     * 获取群成员列表
+     *
+     * @param request 请求对象
+     * @return 响应对象
+     */
+    public GetGroupMemberListResponse getGroupMemberList(GetGroupMemberListRequest request) {
+        return baseApiService.callApi(NapCatApiEnum.GET_GROUP_MEMBER_LIST, request, GetGroupMemberListResponse.class);
+    }
+
     // ==================== 表情相关 ====================
 
     /**
@@ -1,31 +1,108 @@
 package com.miko.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miko.cache.GroupMemberDirectory;
+import com.miko.cache.RecentMessage;
+import com.miko.cache.RecentMessageBuffer;
+import com.miko.entity.BotChatContext;
+import com.miko.entity.napcat.request.GetMsgRequest;
+import com.miko.entity.napcat.response.GetMsgResponse;
 import com.miko.enums.CQFaceEnum;
-import love.forte.simbot.common.id.ID;
+import com.miko.service.NapCatApiService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import love.forte.simbot.common.id.Identifies;
 import love.forte.simbot.component.onebot.v11.core.event.message.OneBotGroupMessageEvent;
 import love.forte.simbot.component.onebot.v11.core.event.message.OneBotMessageEvent;
 import love.forte.simbot.component.onebot.v11.message.segment.*;
+import org.springframework.stereotype.Component;
 
-import java.util.Objects;
+import java.time.Duration;
+import java.util.regex.Pattern;
 
+/**
+ * OneBot消息整合工具，@某人时的群成员名称取自 {@link GroupMemberDirectory}，
+ * 引用回复的原消息取自 {@link RecentMessageBuffer}，未命中时才调用 get_msg 接口。
+ * 事件线程上只用本地数据整合（{@link #fixMessage}），需要调用接口的整合（{@link #resolveMessage}）留给调度器的虚拟线程。
+ * 整合结果按消息ID短暂缓存，记入消息缓冲和拼接AI提示词时只整合一次。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
 public class OneBotMessageUtil {
 
     /**
-     * 消息整合
+     * get_msg 返回的原始消息中的CQ码
+     */
+    private static final Pattern CQ_CODE = Pattern.compile("\\[CQ:[^\\]]*]");
+
+    /**
+     * 整合结果缓存: key = 消息ID，覆盖连发消息合并窗口即可
+     */
+    private final Cache<String, String> fixed = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(2))
+            .build();
+
+    private final GroupMemberDirectory memberDirectory;
+    private final RecentMessageBuffer recentMessages;
+    private final NapCatApiService napCatApiService;
+
+    /**
+     * 消息整合，只用本地数据，不阻塞调用线程，可在事件线程上调用
+     * <p>被引用的消息不在近期消息缓冲中时略去引用，@的成员不在名录中时显示QQ号，这样的结果不缓存</p>
      *
      * @param event OneBot消息事件对象
      * @return 整合后的消息字符串
      */
-    public static String fixMessage(OneBotMessageEvent event) {
+    public String fixMessage(OneBotMessageEvent event) {
+        String id = event.getId().toString();
+        String cached = fixed.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        Fixed result = fix(event, false);
+        if (result.complete()) {
+            fixed.put(id, result.text());
+        }
+        return result.text();
+    }
 
+    /**
+     * 消息整合，本地数据未命中时调用 get_msg / getMember 接口
+     * <p>会发起HTTP调用，只能在调度器的虚拟线程上调用；接口调用在缓存计算之外进行，不阻塞同一缓存分段的其他写入</p>
+     *
+     * @param event OneBot消息事件对象
+     * @return 整合后的消息字符串
+     */
+    public String resolveMessage(OneBotMessageEvent event) {
+        String id = event.getId().toString();
+        String cached = fixed.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        String text = fix(event, true).text();
+        fixed.put(id, text);
+        return text;
+    }
+
+    /**
+     * @param remote 本地数据未命中时是否调用接口
+     */
+    private Fixed fix(OneBotMessageEvent event, boolean remote) {
         // 消息内容
         StringBuilder msgfix = new StringBuilder();
+        boolean[] complete = {true};
         event.getSourceEvent().getMessage().forEach(msg -> {
             if (msg instanceof OneBotReply reply) {
-                // TODO
-                ID id = reply.getId();
-//                GetMsgApi.create(id).getApiResultDeserializer().deserialize().getData().getMessage()
+                String messageId = reply.getId().toString();
+                RecentMessage quoted = remote ? resolveReply(messageId) : recentMessages.find(messageId);
+                if (quoted != null) {
+                    msgfix.append("[引用 ").append(quoted.sender()).append("：").append(quoted.text()).append("]");
+                } else if (!remote) {
+                    complete[0] = false;
+                }
             }
 
             if (msg instanceof OneBotText text) {
@@ -40,14 +117,57 @@ public class OneBotMessageUtil {
                 msgfix.append("[Json]").append(json.getData().getData());
             } else if (msg instanceof OneBotAt at) {
                 if (event instanceof OneBotGroupMessageEvent groupEvent) {
-                    String nick = Objects.requireNonNull(groupEvent.getContent().getMember(Identifies.of(at.getData().getQq()))).getNick();
-                    if (nick == null || nick.isEmpty()) {
-                        nick = Objects.requireNonNull(groupEvent.getContent().getMember(Identifies.of(at.getData().getQq()))).getName();
+                    String qq = at.getData().getQq();
+                    String nick;
+                    if ("all".equals(qq)) {
+                        nick = "全体成员";
+                    } else if (remote) {
+                        nick = memberDirectory.displayName(groupEvent, Identifies.of(qq));
+                    } else {
+                        nick = memberDirectory.findDisplayName(groupEvent, Identifies.of(qq));
+                        if (nick == null) {
+                            nick = qq;
+                            complete[0] = false;
+                        }
                     }
                     msgfix.append("@").append(nick);
                 }
             }
         });
-        return msgfix.toString();
+        return new Fixed(msgfix.toString(), complete[0]);
+    }
+
+    /**
+     * 取回被引用的原消息：先查近期消息缓冲，未命中再调用 get_msg 并写回缓冲
+     */
+    private RecentMessage resolveReply(String messageId) {
+        RecentMessage quoted = recentMessages.find(messageId);
+        if (quoted != null) {
+            return quoted;
+        }
+        try {
+            GetMsgResponse response = napCatApiService.getMsg(new GetMsgRequest().setMessageId(messageId));
+            if (response == null || response.getData() == null || response.getData().getRawMessage() == null) {
+                return null;
+            }
+            GetMsgResponse.MessageData data = response.getData();
+            String conversation = data.getGroupId() != null
+                    ? BotChatContext.ChatType.GROUP + data.getGroupId().toString()
+                    : BotChatContext.ChatType.PRIVATE + String.valueOf(data.getUserId());
+            GetMsgResponse.Sender sender = data.getSender();
+            String senderName = sender == null ? String.valueOf(data.getUserId())
+                    : sender.getCard() != null && !sender.getCard().isEmpty() ? sender.getCard() : sender.getNickname();
+            String text = CQ_CODE.matcher(data.getRawMessage()).replaceAll("").trim();
+            return recentMessages.record(conversation, messageId, senderName, text);
+        } catch (Exception e) {
+            log.warn("获取被引用消息失败，messageId:{}，{}", messageId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 整合结果，complete 为false表示有本地未命中、尚未调用接口补全的内容
+     */
+    private record Fixed(String text, boolean complete) {
     }
 }
@@ -0,0 +1,193 @@
+package com.miko;
+
+import com.miko.admission.DegradationLadder;
+import com.miko.config.AiAdmissionConfig;
+import com.miko.config.AiDispatchConfig;
+import com.miko.config.VolcArkConfig;
+import com.miko.dispatch.AiDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AI回复调度器测试：会话内顺序、会话间并发、邮箱回收、队列满和繁忙时的拒绝
+ */
+class AiDispatcherTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AiDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void runsSameKeyTasksInOrder() throws Exception {
+        dispatcher = dispatcher(4, 256, 10.0);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(50);
+
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            assertTrue(dispatcher.dispatch("PRIVATE1", () -> {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                order.add(n);
+                active.decrementAndGet();
+                done.countDown();
+            }));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(IntStream.range(0, 50).boxed().toList(), order);
+        assertEquals(1, peak.get());
+    }
+
+    // 不同会话并行执行，但同时执行的任务数不超过 maxConcurrency
+    @Test
+    void runsDifferentKeysInParallelUpToMaxConcurrency() throws Exception {
+        dispatcher = dispatcher(2, 256, 10.0);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(dispatcher.dispatch("GROUP" + i, () -> {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                await(release);
+                active.decrementAndGet();
+                done.countDown();
+            }));
+        }
+
+        // 两个会话占满许可，另外两个等待许可
+        awaitUntil(() -> gauge("ai.dispatch.running") == 2 && gauge("ai.dispatch.permit.waiting") == 2);
+        assertEquals(2, active.get());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, peak.get());
+    }
+
+    // 邮箱排空后被移除，同一会话的下一条任务重新创建邮箱并启动消费
+    @Test
+    void removesDrainedMailboxAndRestartsOnNextDispatch() throws Exception {
+        dispatcher = dispatcher(4, 256, 10.0);
+        CountDownLatch first = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch("PRIVATE1", first::countDown));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        awaitUntil(() -> gauge("ai.dispatch.mailboxes") == 0);
+
+        CountDownLatch second = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch("PRIVATE1", second::countDown));
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        awaitUntil(() -> gauge("ai.dispatch.mailboxes") == 0);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        dispatcher = dispatcher(1, 2, 10.0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+
+        assertTrue(dispatcher.dispatch("PRIVATE1", () -> {
+            started.countDown();
+            await(release);
+            done.countDown();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // 正在执行的任务不计入排队数，再排两条达到上限
+        assertTrue(dispatcher.dispatch("PRIVATE1", done::countDown));
+        assertTrue(dispatcher.dispatch("PRIVATE1", done::countDown));
+        assertFalse(dispatcher.dispatch("PRIVATE1", done::countDown));
+        assertEquals(1, shed("queue_full"));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    // 等待许可的任务数达到 busy-ratio × maxConcurrency 时拒绝新任务，压力解除后恢复受理
+    @Test
+    void rejectsWhenLadderIsBusy() throws Exception {
+        dispatcher = dispatcher(1, 256, 1.0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        assertTrue(dispatcher.dispatch("GROUP1", () -> {
+            started.countDown();
+            await(release);
+            done.countDown();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch("GROUP2", done::countDown));
+        awaitUntil(() -> gauge("ai.dispatch.permit.waiting") == 1);
+
+        assertFalse(dispatcher.dispatch("GROUP3", () -> {
+        }));
+        assertEquals(1, shed("busy"));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        CountDownLatch after = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch("GROUP3", after::countDown));
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+    }
+
+    private AiDispatcher dispatcher(int maxConcurrency, int maxQueueSize, double busyRatio) {
+        AiDispatchConfig config = new AiDispatchConfig();
+        config.setMaxConcurrency(maxConcurrency);
+        config.setMaxQueueSize(maxQueueSize);
+        AiAdmissionConfig admissionConfig = new AiAdmissionConfig();
+        admissionConfig.setNoThinkingRatio(Math.min(busyRatio, admissionConfig.getNoThinkingRatio()));
+        admissionConfig.setFastModelRatio(Math.min(busyRatio, admissionConfig.getFastModelRatio()));
+        admissionConfig.setBusyRatio(busyRatio);
+        VolcArkConfig volcArkConfig = new VolcArkConfig();
+        volcArkConfig.setModels(List.of());
+        DegradationLadder ladder = new DegradationLadder(admissionConfig, volcArkConfig, meterRegistry);
+        return new AiDispatcher(config, ladder, meterRegistry);
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private double shed(String reason) {
+        return meterRegistry.get("ai.admission.shed").tag("reason", reason).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(5);
+        }
+    }
+}
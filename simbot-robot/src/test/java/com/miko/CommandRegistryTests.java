@@ -0,0 +1,144 @@
+package com.miko;
+
+import com.miko.command.Command;
+import com.miko.command.CommandRegistry;
+import com.miko.command.CommandRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 命令注册表的路由测试
+ */
+class CommandRegistryTests {
+
+    /**
+     * 测试用命令处理方法
+     */
+    static class Handlers {
+        @Command({"/模型列表", "/models"})
+        String modelList(CommandRequest request) {
+            return "list";
+        }
+
+        @Command(value = {"/切换模型", "/changeModel"}, args = "(\\d+)")
+        String modelSwitch(CommandRequest request) {
+            return "switch:" + request.group(1);
+        }
+
+        @Command(value = "/设置聊天风格", args = "(?s)\\s*(.*)")
+        String persona(CommandRequest request) {
+            return "persona:" + request.group(1);
+        }
+
+        @Command(value = "/设置聊天风格并清空", args = "")
+        String personaReset(CommandRequest request) {
+            return "reset";
+        }
+
+        String echo(CommandRequest request) {
+            return request.command();
+        }
+    }
+
+    @Test
+    void routesByLongestPrefix() throws Exception {
+        CommandRegistry registry = registryWith(0);
+
+        assertEquals("list", registry.dispatch("1", "/models"));
+        assertEquals("switch:3", registry.dispatch("1", "/切换模型3"));
+        assertEquals("switch:12", registry.dispatch("1", "/changeModel12"));
+        assertEquals("persona:傲娇", registry.dispatch("1", "/设置聊天风格  傲娇"));
+        // 两个前缀同时命中时优先最长前缀
+        assertEquals("reset", registry.dispatch("1", "/设置聊天风格并清空"));
+        // 参数不匹配 / 无参数命令后跟多余内容 / 未知命令
+        assertNull(registry.dispatch("1", "/切换模型abc"));
+        assertNull(registry.dispatch("1", "/models2"));
+        assertNull(registry.dispatch("1", "/不存在的命令"));
+    }
+
+    @Test
+    void rejectsDuplicatePrefix() throws Exception {
+        CommandRegistry registry = registryWith(0);
+        Method echo = Handlers.class.getDeclaredMethod("echo", CommandRequest.class);
+        assertThrows(IllegalStateException.class, () -> registry.register(new Handlers(), echo, command("", "/models")));
+    }
+
+    // 大量命令注册后仍按最长前缀精确路由，无关命令不会干扰已有命令
+    @Test
+    void routesAmongManyCommands() throws Exception {
+        CommandRegistry registry = registryWith(2000);
+
+        assertEquals("list", registry.dispatch("1", "/models"));
+        assertEquals("switch:3", registry.dispatch("1", "/切换模型3"));
+        assertEquals("/cmd1999x", registry.dispatch("1", "/cmd1999x42"));
+        assertEquals("/cmd1x", registry.dispatch("1", "/cmd1x"));
+        assertNull(registry.dispatch("1", "/cmd1x abc"));
+        assertNull(registry.dispatch("1", "/cmd2000x"));
+    }
+
+    // 每次分发的查找耗时按是否命中分别计时
+    @Test
+    void recordsDispatchCost() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CommandRegistry registry = registryWith(2000, meterRegistry);
+
+        for (int i = 0; i < 100; i++) {
+            registry.dispatch("1", "/cmd" + i + "x" + i);
+        }
+        registry.dispatch("1", "/不存在的命令");
+
+        Timer found = meterRegistry.get("command.dispatch").tag("result", "found").timer();
+        Timer unknown = meterRegistry.get("command.dispatch").tag("result", "unknown").timer();
+        assertEquals(100, found.count());
+        assertEquals(1, unknown.count());
+        assertTrue(found.totalTime(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    private static CommandRegistry registryWith(int extra) throws Exception {
+        return registryWith(extra, new SimpleMeterRegistry());
+    }
+
+    /**
+     * 注册测试命令，并额外注册 extra 条形如 "/cmdN" 的无关命令
+     */
+    private static CommandRegistry registryWith(int extra, MeterRegistry meterRegistry) throws Exception {
+        CommandRegistry registry = new CommandRegistry(meterRegistry);
+        Handlers handlers = new Handlers();
+        registry.postProcessAfterInitialization(handlers, "handlers");
+        Method echo = Handlers.class.getDeclaredMethod("echo", CommandRequest.class);
+        for (int i = 0; i < extra; i++) {
+            registry.register(handlers, echo, command("(\\d*)", "/cmd" + i + "x"));
+        }
+        return registry;
+    }
+
+    private static Command command(String args, String... prefixes) {
+        return new Command() {
+            @Override
+            public String[] value() {
+                return prefixes;
+            }
+
+            @Override
+            public String args() {
+                return args;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return Command.class;
+            }
+        };
+    }
+}
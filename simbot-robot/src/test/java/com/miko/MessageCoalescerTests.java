@@ -0,0 +1,74 @@
+package com.miko;
+
+import com.miko.config.AiDispatchConfig;
+import com.miko.dispatch.MessageCoalescer;
+import com.miko.entity.BotChatContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 连发消息合并器测试：窗口内合并、指令先发送等待中的批次
+ */
+class MessageCoalescerTests {
+
+    private static final BotChatContext.ChatType PRIVATE = BotChatContext.ChatType.PRIVATE;
+
+    private MessageCoalescer coalescer;
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        AiDispatchConfig config = new AiDispatchConfig();
+        // 窗口足够长，测试期间不会超时发送
+        config.getCoalesce().setPrivateWindow(Duration.ofSeconds(30));
+        coalescer = new MessageCoalescer(config, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+    }
+
+    @Test
+    void sendsPendingBatchBeforeCommand() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        coalescer.offer("PRIVATE1", PRIVATE, "早上好", this::record);
+        coalescer.offer("PRIVATE1", PRIVATE, "在吗", this::record);
+        coalescer.flushThen("PRIVATE1", () -> {
+            order.add("/清空上下文");
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("早上好+在吗", "/清空上下文"), order);
+    }
+
+    // 指令之后的消息开始新的批次，其他会话的批次不受影响
+    @Test
+    void startsNewBatchAfterCommand() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        coalescer.offer("PRIVATE2", PRIVATE, "别的会话", this::record);
+        coalescer.flushThen("PRIVATE1", () -> order.add("/帮助"));
+        coalescer.offer("PRIVATE1", PRIVATE, "你好", this::record);
+        coalescer.flushThen("PRIVATE1", done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("/帮助", "你好"), order);
+    }
+
+    private void record(List<String> batch) {
+        order.add(String.join("+", batch));
+    }
+}
@@ -0,0 +1,141 @@
+package com.miko.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 监听器耗时汇总
+ * <p>
+ * 把 simbot.listener.duration / simbot.listener.active / simbot.reply.latency / simbot.reply.first.chunk 汇总为表格，
+ * 按p99倒序排列，便于找出慢监听器；原始指标仍可通过 /actuator/metrics 查询。
+ * </p>
+ */
+@RestController
+@RequestMapping("/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final MeterRegistry meterRegistry;
+
+    @GetMapping("/listeners")
+    List<Map<String, Object>> listeners() {
+        return meterRegistry.find("simbot.listener.duration").timers().stream()
+                .map(timer -> {
+                    Map<String, Object> row = summary(timer);
+                    LongTaskTimer active = meterRegistry.find("simbot.listener.active")
+                            .tags(timer.getId().getTags())
+                            .longTaskTimer();
+                    row.put("active", active == null ? 0 : active.activeTasks());
+                    return row;
+                })
+                .sorted(Comparator.comparingDouble((Map<String, Object> row) -> (double) row.getOrDefault("p99", 0.0)).reversed())
+                .toList();
+    }
+
+    @GetMapping("/replies")
+    List<Map<String, Object>> replies() {
+        return Stream.of("simbot.reply.latency", "simbot.reply.first.chunk")
+                .flatMap(name -> meterRegistry.find(name).timers().stream())
+                .map(timer -> {
+                    Map<String, Object> row = summary(timer);
+                    row.put("metric", timer.getId().getName());
+                    return row;
+                })
+                .toList();
+    }
+
+    /**
+     * 各模型的上下文缓存命中率 = ai.tokens.cached / ai.tokens.input
+     */
+    @GetMapping("/prompt-cache")
+    List<Map<String, Object>> promptCache() {
+        return meterRegistry.find("ai.tokens.input").counters().stream()
+                .map(input -> {
+                    String model = input.getId().getTag("model");
+                    Counter cached = meterRegistry.find("ai.tokens.cached").tag("model", model).counter();
+                    double cachedTokens = cached == null ? 0 : cached.count();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("model", model);
+                    row.put("inputTokens", input.count());
+                    row.put("cachedTokens", cachedTokens);
+                    row.put("hitRate", input.count() == 0 ? 0.0 : cachedTokens / input.count());
+                    return row;
+                })
+                .toList();
+    }
+
+    @GetMapping("/breakers")
+    List<Map<String, Object>> breakers() {
+        return meterRegistry.find("ai.breaker.state").gauges().stream()
+                .map(state -> {
+                    String scope = state.getId().getTag("scope");
+                    String model = state.getId().getTag("model");
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("scope", scope);
+                    row.put("model", model);
+                    row.put("state", switch ((int) state.value()) {
+                        case 1 -> "open";
+                        case 2 -> "half_open";
+                        default -> "closed";
+                    });
+                    row.put("transitions", meterRegistry.find("ai.breaker.transition").tag("scope", scope).tag("model", model)
+                            .counters().stream().mapToDouble(Counter::count).sum());
+                    return row;
+                })
+                .toList();
+    }
+
+    /**
+     * 各服务商的首字耗时、错误率（均为EWMA）和被选中次数
+     */
+    @GetMapping("/providers")
+    List<Map<String, Object>> providers() {
+        return meterRegistry.find("ai.provider.ttft").gauges().stream()
+                .map(ttft -> {
+                    String provider = ttft.getId().getTag("provider");
+                    Gauge errorRate = meterRegistry.find("ai.provider.error.rate").tag("provider", provider).gauge();
+                    Counter selected = meterRegistry.find("ai.provider.selected").tag("provider", provider).counter();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("provider", provider);
+                    row.put("ttft", ttft.value());
+                    row.put("errorRate", errorRate == null ? 0.0 : errorRate.value());
+                    row.put("selected", selected == null ? 0.0 : selected.count());
+                    return row;
+                })
+                .toList();
+    }
+
+    /**
+     * 单个计时器的汇总，耗时单位为毫秒
+     */
+    private static Map<String, Object> summary(Timer timer) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        Meter.Id id = timer.getId();
+        id.getTags().forEach(tag -> row.put(tag.getKey(), tag.getValue()));
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        row.put("count", snapshot.count());
+        row.put("mean", snapshot.mean(TimeUnit.MILLISECONDS));
+        row.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            row.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return row;
+    }
+}
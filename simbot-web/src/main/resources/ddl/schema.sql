@@ -8,7 +8,7 @@ CREATE TABLE IF NOT EXISTS `bot_task`
     `id`          BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '任务主键ID',
     `target_type` CHAR(1)         NOT NULL COMMENT '发送目标类型：0-群组，1-好友',
     `target_id`   VARCHAR(255)    NOT NULL COMMENT '发送目标（多个可逗号分隔）',
-    `type`        VARCHAR(50)     NOT NULL COMMENT '任务类型（如：文本、图片、链接等）',
+    `type`        VARCHAR(50)     NOT NULL COMMENT '任务类型（如：文本、图片、链接等；ai-内容为提示词，由AI在低峰期预生成消息）',
     `content`     TEXT            NOT NULL COMMENT '消息内容',
     `active`      CHAR(1)         NOT NULL DEFAULT '1' COMMENT '是否激活：1-激活，0-禁用',
     `create_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -95,4 +95,24 @@ CREATE TABLE IF NOT EXISTS `bot_ai_audit_log`
     INDEX idx_ai_audit_log_created_at (`created_at`)
 ) ENGINE = InnoDB
   DEFAULT CHARSET = utf8mb4
-  COLLATE = utf8mb4_unicode_ci COMMENT ='AI审计日志表：记录AI模型调用的审计信息';
\ No newline at end of file
+  COLLATE = utf8mb4_unicode_ci COMMENT ='AI审计日志表：记录AI模型调用的审计信息';
+-- AI后台任务表
+CREATE TABLE IF NOT EXISTS `bot_ai_job`
+(
+    `job_id`      BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '任务ID',
+    `job_type`    VARCHAR(32)     NOT NULL COMMENT '任务类型：MEMORY_SUMMARY-记忆摘要，TASK_CONTENT-定时任务内容预生成',
+    `target_id`   VARCHAR(64)     NOT NULL COMMENT '任务对象ID（好友QQ号/定时任务ID:日期）',
+    `payload`     MEDIUMTEXT      NULL COMMENT '任务输入',
+    `status`      TINYINT         NOT NULL DEFAULT 0 COMMENT '状态：0-待执行，1-执行中，2-成功，3-失败',
+    `attempts`    INT             NOT NULL DEFAULT 0 COMMENT '已执行次数',
+    `result`      TEXT            NULL COMMENT '任务输出',
+    `error`       VARCHAR(512)    NULL COMMENT '最近一次失败原因',
+    `create_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`job_id`),
+    INDEX idx_ai_job_status (`status`, `job_id`),
+    INDEX idx_ai_job_target (`job_type`, `target_id`),
+    INDEX idx_ai_job_update_time (`update_time`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_unicode_ci COMMENT ='AI后台任务表：非交互的AI调用在低峰期批量执行';